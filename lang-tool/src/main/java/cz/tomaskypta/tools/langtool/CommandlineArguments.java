@@ -1,5 +1,7 @@
 package cz.tomaskypta.tools.langtool;
 
+import java.util.List;
+
 import com.beust.jcommander.Parameter;
 
 /**
@@ -14,7 +16,7 @@ public class CommandlineArguments {
     @Parameter(names = "--additional-resources", description = "Colon separated list of additional resource files" +
         " to export")
     String additionalResources;
-    @Parameter(names = "-i", description = "Import xls file")
+    @Parameter(names = "-i", description = "Import xls, xlsx, csv or tsv file")
     String importFile;
     @Parameter(names = "-m", description = "Mapping file for rewriting resource qualifiers")
     String mappingFile;
@@ -37,6 +39,44 @@ public class CommandlineArguments {
     String extraTransformations;
     @Parameter(names = "--mixed-content", description = "List of mixed content keys.")
     String mixedContent;
+    @Parameter(names = "--threads", description = "Number of worker threads used for processing resources in " +
+        "parallel.")
+    int threads = 1;
+    @Parameter(names = "--incremental", description = "Update the previously exported file, only with resources " +
+        "changed since the last export.")
+    boolean incremental;
+    @Parameter(names = "--only-changed", description = "Write only the imported resource files whose content " +
+        "changed.")
+    boolean onlyChanged;
+    @Parameter(names = "--all-modules", description = "Export resources of all the modules, flavors and source " +
+        "sets found in the project dir.")
+    boolean allModules;
+    @Parameter(names = "--watch", description = "Keep watching the resources after the export and update the " +
+        "exported file with every change.")
+    boolean watch;
+    @Parameter(names = "--metrics", description = "Write timings and counters of the run into this JSON file.")
+    String metricsFile;
+    @Parameter(names = "--snapshot", description = "Write a binary snapshot of the exported translations into this " +
+        "file.")
+    String snapshotFile;
+    @Parameter(names = "--diff", arity = 2, description = "Compare translations of an old and a new snapshot.")
+    List<String> diffSnapshots;
+    @Parameter(names = "--report", description = "Report translation coverage of a snapshot.")
+    String reportSnapshot;
+    @Parameter(names = "--server", description = "Run a local HTTP server for export and import jobs on this port.")
+    Integer serverPort;
+    @Parameter(names = "--jobs", description = "Number of jobs the server runs at once.")
+    int jobs = Runtime.getRuntime().availableProcessors();
+    @Parameter(names = "--queue", description = "Number of jobs the server keeps waiting before it rejects more.")
+    int queueSize = 16;
+    @Parameter(names = "--max-upload", description = "Maximum size of an upload to the server in megabytes.")
+    int maxUploadMb = 32;
+    @Parameter(names = "--max-entry", description = "Maximum uncompressed size of a single file of an uploaded zip " +
+        "archive or workbook in megabytes.")
+    int maxEntryMb = 16;
+    @Parameter(names = "--max-unzipped", description = "Maximum uncompressed size of an uploaded zip archive or " +
+        "workbook in megabytes.")
+    int maxUnzippedMb = 128;
 
     public String getExportProject() {
         return exportProject;
@@ -81,4 +121,64 @@ public class CommandlineArguments {
     public String getMixedContent() {
         return mixedContent;
     }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public boolean isOnlyChanged() {
+        return onlyChanged;
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    public boolean isAllModules() {
+        return allModules;
+    }
+
+    public String getMetricsFile() {
+        return metricsFile;
+    }
+
+    public String getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public List<String> getDiffSnapshots() {
+        return diffSnapshots;
+    }
+
+    public String getReportSnapshot() {
+        return reportSnapshot;
+    }
+
+    public Integer getServerPort() {
+        return serverPort;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getMaxUploadMb() {
+        return maxUploadMb;
+    }
+
+    public int getMaxEntryMb() {
+        return maxEntryMb;
+    }
+
+    public int getMaxUnzippedMb() {
+        return maxUnzippedMb;
+    }
 }
@@ -1,16 +1,13 @@
 package cz.tomaskypta.tools.langtool;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Row;
+import cz.tomaskypta.tools.langtool.importing.reading.WorkbookReader;
+import cz.tomaskypta.tools.langtool.util.Metrics;
 
 /**
  * Created by tomas on 04.10.14.
@@ -19,19 +16,30 @@ public class CommonConfig {
 
     public String ignoreListFile;
     private Set<String> ignoredSet;
+    public int threads;
+    public String metricsFile;
+    /** Metrics of the run, shared by all the copies of the config. */
+    public Metrics metrics;
 
     public CommonConfig() {
         this.ignoredSet = new HashSet<String>();
+        this.threads = 1;
+        this.metrics = new Metrics();
     }
 
     public CommonConfig(CommonConfig other) {
         this.ignoreListFile = other.ignoreListFile;
         this.ignoredSet = new HashSet<String>(other.ignoredSet);
+        this.threads = other.threads;
+        this.metricsFile = other.metricsFile;
+        this.metrics = other.metrics;
     }
 
     public CommonConfig(CommandlineArguments args) {
         this();
         this.setIgnoredList(args.getIgnoreListFile());
+        this.threads = Math.max(1, args.getThreads());
+        this.metricsFile = args.getMetricsFile();
     }
 
     public Boolean isIgnoredKey(String key) {
@@ -46,15 +54,11 @@ public class CommonConfig {
         ignoredSet.clear();
 
         try {
-            HSSFWorkbook wbEscaping = new HSSFWorkbook(new FileInputStream(new File(this.ignoreListFile)));
-            HSSFSheet sheetEscaping = wbEscaping.getSheetAt(0);
-            Iterator<Row> it = sheetEscaping.rowIterator();
-            while (it.hasNext()) {
-                Row row = it.next();
-                if (row == null || row.getCell(0) == null) {
+            for (String[] cells : WorkbookReader.readRows(new File(this.ignoreListFile))) {
+                if (cells[0] == null) {
                     return;
                 }
-                ignoredSet.add(row.getCell(0).getStringCellValue());
+                ignoredSet.add(cells[0]);
             }
         } catch (FileNotFoundException e) {
 
@@ -0,0 +1,168 @@
+package cz.tomaskypta.tools.langtool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import cz.tomaskypta.tools.langtool.util.LimitedInputStream;
+
+/**
+ * Resource files of a single resource directory kept in memory, e.g. {@code values/strings.xml} and
+ * {@code values-cs/strings.xml}.
+ * <p>
+ * Export and import can work with the tree instead of the project on disk, see
+ * {@link cz.tomaskypta.tools.langtool.exporting.ToolExport#exportTree} and
+ * {@link cz.tomaskypta.tools.langtool.importing.ToolImport#importTree}. All the methods are thread safe.
+ */
+public class ResourceTree {
+
+    private static final String DIR_VALUES = "values";
+
+    /** Content of the files by their paths relative to the resource directory. */
+    private final Map<String, byte[]> mFiles = new TreeMap<String, byte[]>();
+
+    public synchronized void put(String dir, String fileName, byte[] content) {
+        mFiles.put(dir + "/" + fileName, content);
+    }
+
+    /**
+     * @return content of the file or null if there is no such file
+     */
+    public synchronized byte[] get(String dir, String fileName) {
+        return mFiles.get(dir + "/" + fileName);
+    }
+
+    public synchronized boolean contains(String dir, String fileName) {
+        return mFiles.containsKey(dir + "/" + fileName);
+    }
+
+    /**
+     * @return sorted names of the directories containing any file
+     */
+    public synchronized List<String> getDirs() {
+        TreeSet<String> dirs = new TreeSet<String>();
+        for (String path : mFiles.keySet()) {
+            dirs.add(path.substring(0, path.indexOf('/')));
+        }
+        return new ArrayList<String>(dirs);
+    }
+
+    /**
+     * @return sorted paths of all the files relative to the resource directory
+     */
+    public synchronized List<String> getPaths() {
+        return new ArrayList<String>(mFiles.keySet());
+    }
+
+    /**
+     * Reads the files of the {@code values*} directories of a resource directory on disk.
+     */
+    public static ResourceTree read(File resDir) throws IOException {
+        ResourceTree tree = new ResourceTree();
+        File[] dirs = resDir.listFiles();
+        if (dirs == null) {
+            throw new IOException("Cannot list " + resDir);
+        }
+        for (File dir : dirs) {
+            File[] files = dir.listFiles();
+            if (!dir.getName().startsWith(DIR_VALUES) || files == null) {
+                continue;
+            }
+            for (File f : files) {
+                if (f.isFile()) {
+                    InputStream in = new FileInputStream(f);
+                    try {
+                        tree.put(dir.getName(), f.getName(), readFully(in));
+                    } finally {
+                        in.close();
+                    }
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Writes all the files into a resource directory on disk, replacing the existing ones.
+     */
+    public synchronized void write(File resDir) throws IOException {
+        for (Map.Entry<String, byte[]> entry : mFiles.entrySet()) {
+            File f = new File(resDir, entry.getKey());
+            f.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(f);
+            try {
+                out.write(entry.getValue());
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the files of the {@code values*} directories from a zip archive. Only the name of the directory and of
+     * the file are kept from the paths of the entries, so the archive may contain the resource directory at any
+     * depth, e.g. {@code app/src/main/res/values/strings.xml}. The stream is not closed.
+     */
+    public static ResourceTree readZip(InputStream in) throws IOException {
+        return readZip(in, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the files like {@link #readZip(InputStream)}, but fails with
+     * {@link cz.tomaskypta.tools.langtool.util.SizeLimitException} as soon as an entry, or all the entries together,
+     * are larger than allowed once uncompressed, e.g. for archives uploaded to the server.
+     */
+    public static ResourceTree readZip(InputStream in, long maxEntrySize, long maxTotalSize) throws IOException {
+        ResourceTree tree = new ResourceTree();
+        ZipInputStream zip = new ZipInputStream(in);
+        InputStream unzipped = new LimitedInputStream(zip, maxTotalSize, "Unzipped archive");
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String[] segments = entry.getName().split("/");
+            if (segments.length < 2 || !segments[segments.length - 2].startsWith(DIR_VALUES)) {
+                continue;
+            }
+            tree.put(segments[segments.length - 2], segments[segments.length - 1],
+                readFully(new LimitedInputStream(unzipped, maxEntrySize, entry.getName())));
+        }
+        return tree;
+    }
+
+    /**
+     * Writes all the files into a zip archive, with paths prefixed by {@code res/}. The stream is not closed.
+     */
+    public synchronized void writeZip(OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (Map.Entry<String, byte[]> entry : mFiles.entrySet()) {
+            zip.putNextEntry(new ZipEntry("res/" + entry.getKey()));
+            zip.write(entry.getValue());
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        return content.toByteArray();
+    }
+}
@@ -1,5 +1,6 @@
 package cz.tomaskypta.tools.langtool;
 
+import java.io.File;
 import java.io.IOException;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -11,6 +12,10 @@ import cz.tomaskypta.tools.langtool.exporting.ToolExport;
 import cz.tomaskypta.tools.langtool.importing.ToolImport;
 import cz.tomaskypta.tools.langtool.importing.splitting.SplittingConfig;
 import cz.tomaskypta.tools.langtool.importing.splitting.ToolImportSplitter;
+import cz.tomaskypta.tools.langtool.server.ServerConfig;
+import cz.tomaskypta.tools.langtool.server.ToolServer;
+import cz.tomaskypta.tools.langtool.snapshot.SnapshotConfig;
+import cz.tomaskypta.tools.langtool.snapshot.ToolSnapshot;
 import org.xml.sax.SAXException;
 
 public class Tool {
@@ -30,30 +35,61 @@ public class Tool {
             return;
         }
 
-        if (parsedArgs.exportProject != null) {
+        CommonConfig config;
+        if (parsedArgs.serverPort != null) {
+            // jobs keep their own metrics, the server has none to write
+            ToolServer.run(new ServerConfig(parsedArgs));
+            return;
+        } else if (parsedArgs.exportProject != null) {
             // exporting
-            ExportConfig config = new ExportConfig(parsedArgs);
-            ToolExport.run(config);
+            ExportConfig exportConfig = new ExportConfig(parsedArgs);
+            config = exportConfig;
+            config.metrics.setCommand("export");
+            ToolExport.run(exportConfig);
         } else if (parsedArgs.importFile != null) {
-            SplittingConfig config = new SplittingConfig(parsedArgs);
+            SplittingConfig splittingConfig = new SplittingConfig(parsedArgs);
+            config = splittingConfig;
 
             // importing
             if (parsedArgs.splittingConfigFile != null) {
                 // splitting
-                ToolImportSplitter.run(config);
+                config.metrics.setCommand("split");
+                ToolImportSplitter.run(splittingConfig);
             } else {
-                ToolImport.run(config);
+                config.metrics.setCommand("import");
+                ToolImport.run(splittingConfig);
             }
+        } else if (parsedArgs.diffSnapshots != null) {
+            SnapshotConfig snapshotConfig = new SnapshotConfig(parsedArgs);
+            config = snapshotConfig;
+            config.metrics.setCommand("diff");
+            ToolSnapshot.diff(null, snapshotConfig);
+        } else if (parsedArgs.reportSnapshot != null) {
+            SnapshotConfig snapshotConfig = new SnapshotConfig(parsedArgs);
+            config = snapshotConfig;
+            config.metrics.setCommand("report");
+            ToolSnapshot.report(null, snapshotConfig);
         } else {
             printHelp();
+            return;
+        }
+        if (config.metricsFile != null) {
+            config.metrics.writeJson(new File(config.metricsFile));
         }
     }
 
     private static void printHelp() {
         System.out.println("commands format:");
-        System.out.println("\texport: -e <project dir> [-o <output file>] [--additional-resources <colon separated " +
-            "list of additional resources>]");
+        System.out.println("\texport: -e <project dir or snapshot file> [-o <output file>] [--additional-resources " +
+            "<colon separated list of additional resources>] [--threads <number of threads>] [--incremental] " +
+            "[--watch] [--all-modules] [--snapshot <snapshot file>] [--metrics <report file>]");
         System.out.println("\timport: -i <input file> [-s <splitting config>] [-m <mapping file>] [--escaping-config " +
-            "<escaping config file>] [--unescape-before-escaping] [--ignore-list <ingored list file>]");
+            "<escaping config file>] [--unescape-before-escaping] [--ignore-list <ingored list file>] " +
+            "[--threads <number of threads>] [--only-changed] [--metrics <report file>]");
+        System.out.println("\tdiff: --diff <old snapshot file> <new snapshot file> [--metrics <report file>]");
+        System.out.println("\treport: --report <snapshot file> [--metrics <report file>]");
+        System.out.println("\tserver: --server <port> [--jobs <number of jobs>] [--queue <number of queued jobs>] " +
+            "[--additional-resources <colon separated list of additional resources>] [--threads <number of threads>] " +
+            "[-m <mapping file>] [--escaping-config <escaping config file>] [--ignore-list <ingored list file>]");
     }
 }
@@ -0,0 +1,517 @@
+package cz.tomaskypta.tools.langtool;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of the translation tables of an export, memory-mapped and queried without parsing the resources
+ * again.
+ * <p>
+ * The file starts with a header of the magic number, version, number of sheets, offset of the string heap and
+ * offsets of the sheets. Each sheet holds its name and locales, an open addressing hash table of its keys, the key
+ * dictionary, flags of the keys, an offset array of the values for the default language and each locale, and the
+ * rows of the exported sheet. All the strings are deduplicated into a heap of UTF-8 strings prefixed by their
+ * lengths and referenced by their offsets in the heap, -1 for a missing value. Numbers are big-endian ints.
+ * <p>
+ * Snapshots are immutable, so they can be queried from many threads at once.
+ */
+public class TranslationSnapshot {
+
+    /** Locale index of the values of the default language. */
+    public static final int DEFAULT = -1;
+
+    public static final int ROW_KEY = 0;
+    public static final int ROW_COMMENT = 1;
+    public static final int ROW_SECTION_COMMENT = 2;
+    public static final int ROW_PLURALS = 3;
+
+    private static final int MAGIC = 0x4C545353;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int NONE = -1;
+    private static final int FLAG_COUNT = 3;
+
+    private final ByteBuffer mBuffer;
+    private final int mHeap;
+    private final Sheet[] mSheets;
+
+    private TranslationSnapshot(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a snapshot of translations");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported version of the snapshot: " + buffer.getInt(4));
+        }
+        mSheets = new Sheet[buffer.getInt(8)];
+        mHeap = buffer.getInt(12);
+        for (int i = 0; i < mSheets.length; i++) {
+            mSheets[i] = new Sheet(buffer.getInt(HEADER_SIZE + 4 * i));
+        }
+    }
+
+    /**
+     * Maps the snapshot file into memory. The file is read lazily by the queries.
+     */
+    public static TranslationSnapshot open(File f) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large: " + f);
+            }
+            // the mapping stays valid after the file is closed
+            return new TranslationSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            file.close();
+        }
+    }
+
+    public int getSheetCount() {
+        return mSheets.length;
+    }
+
+    public Sheet getSheet(int index) {
+        return mSheets[index];
+    }
+
+    /**
+     * @return the sheet or null if the snapshot has no sheet of the name
+     */
+    public Sheet getSheet(String name) {
+        for (Sheet sheet : mSheets) {
+            if (sheet.getName().equals(name)) {
+                return sheet;
+            }
+        }
+        return null;
+    }
+
+    private String getString(int ref) {
+        if (ref == NONE) {
+            return null;
+        }
+        int position = mHeap + ref;
+        byte[] bytes = new byte[mBuffer.getInt(position)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = mBuffer.get(position + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean equalBytes(int ref, byte[] bytes) {
+        int position = mHeap + ref;
+        if (mBuffer.getInt(position) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (mBuffer.get(position + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalStrings(TranslationSnapshot snapshot, int ref, TranslationSnapshot other,
+                                        int otherRef) {
+        if (ref == NONE || otherRef == NONE) {
+            return ref == otherRef;
+        }
+        if (snapshot == other && ref == otherRef) {
+            // strings of a single snapshot are deduplicated
+            return true;
+        }
+        int position = snapshot.mHeap + ref;
+        int otherPosition = other.mHeap + otherRef;
+        int length = snapshot.mBuffer.getInt(position);
+        if (other.mBuffer.getInt(otherPosition) != length) {
+            return false;
+        }
+        for (int i = 4; i < length + 4; i++) {
+            if (snapshot.mBuffer.get(position + i) != other.mBuffer.get(otherPosition + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        // spread the bits, as the table size is a power of two
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Translations of a single exported sheet. Keys have the ids of the translation table they were exported from.
+     */
+    public class Sheet {
+
+        private final String mName;
+        private final int mLocaleCount;
+        private final int mLocales;
+        private final int mSize;
+        private final int mSlotCount;
+        private final int mSlots;
+        private final int mKeys;
+        private final int mFlags;
+        private final int mValues;
+        private final int mRowCount;
+        private final int mRows;
+
+        private Sheet(int offset) {
+            mName = getString(mBuffer.getInt(offset));
+            mLocaleCount = mBuffer.getInt(offset + 4);
+            mLocales = offset + 8;
+            int position = mLocales + 4 * mLocaleCount;
+            mSize = mBuffer.getInt(position);
+            mSlotCount = mBuffer.getInt(position + 4);
+            mSlots = position + 8;
+            mKeys = mSlots + 4 * mSlotCount;
+            mFlags = mKeys + 4 * mSize;
+            mValues = mFlags + 4 * mSize;
+            position = mValues + 4 * mSize * (mLocaleCount + 1);
+            mRowCount = mBuffer.getInt(position);
+            mRows = position + 4;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getLocaleCount() {
+            return mLocaleCount;
+        }
+
+        public String getLocale(int locale) {
+            return getString(mBuffer.getInt(mLocales + 4 * locale));
+        }
+
+        public List<String> getLocales() {
+            List<String> locales = new ArrayList<String>(mLocaleCount);
+            for (int i = 0; i < mLocaleCount; i++) {
+                locales.add(getLocale(i));
+            }
+            return locales;
+        }
+
+        /**
+         * @return index of the locale or -1 if the sheet has no such locale
+         */
+        public int getLocaleIndex(String locale) {
+            for (int i = 0; i < mLocaleCount; i++) {
+                if (getLocale(i).equals(locale)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return number of the keys
+         */
+        public int size() {
+            return mSize;
+        }
+
+        public String getKey(int id) {
+            return getString(mBuffer.getInt(mKeys + 4 * id));
+        }
+
+        /**
+         * @return id of the key or -1 if the sheet has no such key
+         */
+        public int getId(String key) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            int mask = mSlotCount - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                int id = mBuffer.getInt(mSlots + 4 * slot) - 1;
+                if (id < 0) {
+                    return -1;
+                }
+                if (equalBytes(mBuffer.getInt(mKeys + 4 * id), bytes)) {
+                    return id;
+                }
+            }
+        }
+
+        public boolean hasFlag(int flag, int id) {
+            return (mBuffer.getInt(mFlags + 4 * id) & (1 << flag)) != 0;
+        }
+
+        /**
+         * @param locale index of the locale or {@link #DEFAULT}
+         */
+        public boolean hasValue(int locale, int id) {
+            return getValueRef(locale, id) != NONE;
+        }
+
+        /**
+         * @param locale index of the locale or {@link #DEFAULT}
+         * @return the value or null if the key has no value in the locale
+         */
+        public String getValue(int locale, int id) {
+            return getString(getValueRef(locale, id));
+        }
+
+        /**
+         * Compares values without decoding them.
+         *
+         * @param locale index of the locale or {@link #DEFAULT}
+         * @param otherLocale index of the locale of the other sheet or {@link #DEFAULT}
+         * @return true if both the values are equal or missing
+         */
+        public boolean equalValues(int locale, int id, Sheet other, int otherLocale, int otherId) {
+            return equalStrings(TranslationSnapshot.this, getValueRef(locale, id), other.getSnapshot(),
+                other.getValueRef(otherLocale, otherId));
+        }
+
+        private TranslationSnapshot getSnapshot() {
+            return TranslationSnapshot.this;
+        }
+
+        private int getValueRef(int locale, int id) {
+            return mBuffer.getInt(mValues + 4 * (mSize * (locale + 1) + id));
+        }
+
+        public int getRowCount() {
+            return mRowCount;
+        }
+
+        /**
+         * @param row index of the row, without the title row
+         * @return one of the ROW_ constants
+         */
+        public int getRowKind(int row) {
+            return mBuffer.getInt(mRows + 8 * row);
+        }
+
+        /**
+         * @return id of the key of a {@link #ROW_KEY} row
+         */
+        public int getRowId(int row) {
+            return mBuffer.getInt(mRows + 8 * row + 4);
+        }
+
+        /**
+         * @return content of a comment or key of a plurals row
+         */
+        public String getRowText(int row) {
+            return getString(mBuffer.getInt(mRows + 8 * row + 4));
+        }
+
+        /**
+         * Decodes the keys, translations, flags and rows of the locales into a table with the same ids.
+         */
+        public TranslationTable toTable() {
+            TranslationTable table = new TranslationTable(getLocales());
+            for (int id = 0; id < mSize; id++) {
+                table.add(getKey(id));
+                for (int locale = 0; locale < mLocaleCount; locale++) {
+                    String value = getValue(locale, id);
+                    if (value != null) {
+                        table.setValue(locale, id, value);
+                    }
+                }
+                for (int flag = 0; flag < FLAG_COUNT; flag++) {
+                    if (hasFlag(flag, id)) {
+                        table.setFlag(flag, id, true);
+                    }
+                }
+            }
+            for (int row = 0; row < mRowCount; row++) {
+                if (getRowKind(row) == ROW_KEY) {
+                    // row 0 is the title of the sheet
+                    table.setRow(getRowId(row), row + 1);
+                }
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Collects the exported sheets row by row and writes them as a snapshot.
+     */
+    public static class Builder {
+
+        private final Map<String, Integer> mRefs = new HashMap<String, Integer>();
+        private byte[] mHeap = new byte[64 * 1024];
+        private int mHeapSize;
+        private final List<SheetData> mSheets = new ArrayList<SheetData>();
+        private SheetData mSheet;
+
+        private static class SheetData {
+            int name;
+            int[] locales;
+            int[] defaults = new int[0];
+            int[] rows = new int[64];
+            int rowCount;
+            int[] keys;
+            int[] flags;
+            /** Values of the default language followed by the values of the locales. */
+            int[] values;
+            int[] slots;
+        }
+
+        public void startSheet(String name, List<String> locales) {
+            mSheet = new SheetData();
+            mSheet.name = ref(name);
+            mSheet.locales = new int[locales.size()];
+            for (int i = 0; i < mSheet.locales.length; i++) {
+                mSheet.locales[i] = ref(locales.get(i));
+            }
+            mSheets.add(mSheet);
+        }
+
+        public void addComment(String content, boolean sectionTitle) {
+            addRow(sectionTitle ? ROW_SECTION_COMMENT : ROW_COMMENT, ref(content));
+        }
+
+        public void addPlurals(String key) {
+            addRow(ROW_PLURALS, ref(key));
+        }
+
+        /**
+         * Adds a row of a key of the table passed to {@link #endSheet(TranslationTable)}.
+         */
+        public void addRow(int id, String defaultValue) {
+            if (id >= mSheet.defaults.length) {
+                int length = mSheet.defaults.length;
+                mSheet.defaults = Arrays.copyOf(mSheet.defaults, Math.max(64, id * 2));
+                Arrays.fill(mSheet.defaults, length, mSheet.defaults.length, NONE);
+            }
+            mSheet.defaults[id] = ref(defaultValue);
+            addRow(ROW_KEY, id);
+        }
+
+        private void addRow(int kind, int ref) {
+            if (mSheet.rowCount * 2 == mSheet.rows.length) {
+                mSheet.rows = Arrays.copyOf(mSheet.rows, mSheet.rows.length * 2);
+            }
+            mSheet.rows[mSheet.rowCount * 2] = kind;
+            mSheet.rows[mSheet.rowCount * 2 + 1] = ref;
+            mSheet.rowCount++;
+        }
+
+        /**
+         * Finishes the sheet with all the keys, flags and translations of the table, including the keys without a
+         * row.
+         */
+        public void endSheet(TranslationTable table) {
+            int size = table.size();
+            mSheet.keys = new int[size];
+            mSheet.flags = new int[size];
+            mSheet.values = new int[size * (mSheet.locales.length + 1)];
+            int slotCount = 2;
+            while (slotCount < size * 2) {
+                slotCount *= 2;
+            }
+            mSheet.slots = new int[slotCount];
+            for (int id = 0; id < size; id++) {
+                String key = table.getKey(id);
+                mSheet.keys[id] = ref(key);
+                for (int flag = 0; flag < FLAG_COUNT; flag++) {
+                    if (table.hasFlag(flag, id)) {
+                        mSheet.flags[id] |= 1 << flag;
+                    }
+                }
+                mSheet.values[id] = id < mSheet.defaults.length ? mSheet.defaults[id] : NONE;
+                for (int locale = 0; locale < mSheet.locales.length; locale++) {
+                    mSheet.values[size * (locale + 1) + id] = ref(table.getValue(locale, id));
+                }
+                if (key != null && table.getId(key) == id) {
+                    int slot = hash(key) & (slotCount - 1);
+                    while (mSheet.slots[slot] != 0) {
+                        slot = (slot + 1) & (slotCount - 1);
+                    }
+                    mSheet.slots[slot] = id + 1;
+                }
+            }
+            mSheet.defaults = null;
+            mSheet = null;
+        }
+
+        /**
+         * @return reference of the string in the heap, the string is added if the heap does not have it yet
+         */
+        private int ref(String str) {
+            if (str == null) {
+                return NONE;
+            }
+            Integer ref = mRefs.get(str);
+            if (ref != null) {
+                return ref;
+            }
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            if (mHeapSize + 4 + bytes.length > mHeap.length) {
+                mHeap = Arrays.copyOf(mHeap, Math.max(mHeap.length * 2, mHeapSize + 4 + bytes.length));
+            }
+            ByteBuffer.wrap(mHeap, mHeapSize, 4).putInt(bytes.length);
+            System.arraycopy(bytes, 0, mHeap, mHeapSize + 4, bytes.length);
+            ref = mHeapSize;
+            mHeapSize += 4 + bytes.length;
+            mRefs.put(str, ref);
+            return ref;
+        }
+
+        /**
+         * @return number of bytes written
+         */
+        public long write(File f) throws IOException {
+            int[] offsets = new int[mSheets.size()];
+            long position = HEADER_SIZE + 4L * mSheets.size();
+            for (int i = 0; i < offsets.length; i++) {
+                SheetData sheet = mSheets.get(i);
+                offsets[i] = (int)position;
+                position += 4L * (5 + sheet.locales.length + sheet.slots.length + sheet.keys.length
+                    + sheet.flags.length + sheet.values.length + 2 * sheet.rowCount);
+            }
+            if (position + mHeapSize > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large");
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(mSheets.size());
+                out.writeInt((int)position);
+                writeInts(out, offsets, offsets.length);
+                for (SheetData sheet : mSheets) {
+                    out.writeInt(sheet.name);
+                    out.writeInt(sheet.locales.length);
+                    writeInts(out, sheet.locales, sheet.locales.length);
+                    out.writeInt(sheet.keys.length);
+                    out.writeInt(sheet.slots.length);
+                    writeInts(out, sheet.slots, sheet.slots.length);
+                    writeInts(out, sheet.keys, sheet.keys.length);
+                    writeInts(out, sheet.flags, sheet.flags.length);
+                    writeInts(out, sheet.values, sheet.values.length);
+                    out.writeInt(sheet.rowCount);
+                    writeInts(out, sheet.rows, 2 * sheet.rowCount);
+                }
+                out.write(mHeap, 0, mHeapSize);
+            } finally {
+                out.close();
+            }
+            return position + mHeapSize;
+        }
+
+        private static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                out.writeInt(values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package cz.tomaskypta.tools.langtool;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Translations of a single resource file in all its locales, stored by columns.
+ * <p>
+ * Keys are interned to int ids, assigned in the order the keys were added. Translations of every locale are kept
+ * in an array indexed by the ids, null for a missing translation, and flags of the keys in bit sets. Keys which got
+ * a row of the exported sheet are remembered with their rows, in the order of the rows.
+ * <p>
+ * The table is not thread safe, tables of single files are filled in parallel and merged afterwards.
+ */
+public class TranslationTable {
+
+    public static final int FLAG_UNTRANSLATABLE = 0;
+    public static final int FLAG_PLURAL = 1;
+    public static final int FLAG_ARRAY = 2;
+    private static final int FLAG_COUNT = 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final String[] mLocales;
+    private String[] mKeys = new String[INITIAL_CAPACITY];
+    private int mSize;
+    /** Open addressing hash table of ids + 1 by the hashes of their keys, 0 for a free slot. */
+    private int[] mSlots = new int[INITIAL_CAPACITY * 2];
+    private final String[][] mValues;
+    private final BitSet[] mFlags = new BitSet[FLAG_COUNT];
+    /** Rows of the keys, 0 for a key without a row as row 0 is the title of the sheet. */
+    private int[] mRows = new int[0];
+    private int[] mRowIds = new int[0];
+    private int mRowCount;
+
+    public TranslationTable(List<String> locales) {
+        mLocales = locales.toArray(new String[locales.size()]);
+        mValues = new String[mLocales.length][];
+        for (int i = 0; i < mValues.length; i++) {
+            mValues[i] = new String[0];
+        }
+        for (int i = 0; i < FLAG_COUNT; i++) {
+            mFlags[i] = new BitSet();
+        }
+    }
+
+    /**
+     * @return number of the keys
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public int getLocaleCount() {
+        return mLocales.length;
+    }
+
+    public String getLocale(int locale) {
+        return mLocales[locale];
+    }
+
+    public String getKey(int id) {
+        return mKeys[id];
+    }
+
+    /**
+     * @return id of the key or -1 if the table has no such key
+     */
+    public int getId(String key) {
+        int mask = mSlots.length - 1;
+        for (int slot = hash(key) & mask; mSlots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = mSlots[slot] - 1;
+            if (mKeys[id].equals(key)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return id of the key, the key is added if the table does not have it yet
+     */
+    public int intern(String key) {
+        int id = getId(key);
+        return id >= 0 ? id : add(key);
+    }
+
+    /**
+     * Adds a new entry even if the table already has the key, e.g. for rows of an imported sheet, which may repeat
+     * their keys. {@link #getId(String)} then returns the first of them. A null key gets an id too, but cannot be
+     * looked up.
+     *
+     * @return id of the new entry
+     */
+    public int add(String key) {
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mSize * 2);
+        }
+        int id = mSize++;
+        mKeys[id] = key;
+        if (key != null) {
+            if (mSize * 2 > mSlots.length) {
+                rehash();
+            } else if (getId(key) < 0) {
+                insert(id);
+            }
+        }
+        return id;
+    }
+
+    public String getValue(int locale, int id) {
+        String[] values = mValues[locale];
+        return id < values.length ? values[id] : null;
+    }
+
+    public void setValue(int locale, int id, String value) {
+        if (id >= mValues[locale].length) {
+            mValues[locale] = Arrays.copyOf(mValues[locale], mKeys.length);
+        }
+        mValues[locale][id] = value;
+    }
+
+    public boolean hasFlag(int flag, int id) {
+        return mFlags[flag].get(id);
+    }
+
+    public void setFlag(int flag, int id, boolean value) {
+        mFlags[flag].set(id, value);
+    }
+
+    /**
+     * @return number of the keys with the flag
+     */
+    public int countFlag(int flag) {
+        return mFlags[flag].cardinality();
+    }
+
+    /**
+     * @return row of the key or 0 if the key has no row
+     */
+    public int getRow(int id) {
+        return id < mRows.length ? mRows[id] : 0;
+    }
+
+    /**
+     * Sets the row of the key. A key which already has a row keeps its position in the order of the rows.
+     */
+    public void setRow(int id, int row) {
+        if (id >= mRows.length) {
+            mRows = Arrays.copyOf(mRows, mKeys.length);
+        }
+        if (mRows[id] == 0) {
+            if (mRowCount == mRowIds.length) {
+                mRowIds = Arrays.copyOf(mRowIds, Math.max(INITIAL_CAPACITY, mRowCount * 2));
+            }
+            mRowIds[mRowCount++] = id;
+        }
+        mRows[id] = row;
+    }
+
+    /**
+     * @return number of the keys with a row
+     */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * @param index index in the order of the rows
+     * @return id of the key
+     */
+    public int getRowId(int index) {
+        return mRowIds[index];
+    }
+
+    /**
+     * Merges keys, translations and flags of the first locale of another table into a locale of this table.
+     */
+    public void putAll(int locale, TranslationTable other) {
+        for (int i = 0; i < other.mSize; i++) {
+            int id = intern(other.mKeys[i]);
+            setValue(locale, id, other.getValue(0, i));
+            for (int flag = 0; flag < FLAG_COUNT; flag++) {
+                if (other.mFlags[flag].get(i)) {
+                    mFlags[flag].set(id);
+                }
+            }
+        }
+    }
+
+    private void rehash() {
+        mSlots = new int[mSlots.length * 2];
+        for (int id = 0; id < mSize; id++) {
+            if (mKeys[id] != null && getId(mKeys[id]) < 0) {
+                insert(id);
+            }
+        }
+    }
+
+    private void insert(int id) {
+        int mask = mSlots.length - 1;
+        int slot = hash(mKeys[id]) & mask;
+        while (mSlots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        mSlots[slot] = id + 1;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        // spread the bits, as the table size is a power of two
+        return h ^ (h >>> 16);
+    }
+}
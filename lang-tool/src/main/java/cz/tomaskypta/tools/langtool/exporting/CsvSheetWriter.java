@@ -0,0 +1,127 @@
+package cz.tomaskypta.tools.langtool.exporting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import cz.tomaskypta.tools.langtool.TranslationTable;
+import cz.tomaskypta.tools.langtool.util.CsvWriter;
+
+/**
+ * Writes exported sheets as CSV or TSV files, without Apache POI and without keeping the rows in memory.
+ * <p>
+ * The first sheet is written into the output file and every further sheet into a file next to it, named by the
+ * output file and the sheet, e.g. {@code strings-arrays.xml.csv}. Missing translations are empty cells.
+ */
+class CsvSheetWriter extends SheetWriter {
+
+    private final File mFile;
+    private final OutputStream mOutput;
+    private final char mSeparator;
+    private final Set<String> mSheets = new HashSet<String>();
+    private CsvWriter mWriter;
+    private long mBytesWritten;
+
+    /**
+     * @param output stream for the only sheet, which is not closed, or null to write the sheets into files
+     */
+    CsvSheetWriter(File file, OutputStream output, char separator) {
+        mFile = file;
+        mOutput = output;
+        mSeparator = separator;
+    }
+
+    @Override
+    void startSheet(String name, List<String> langs) throws IOException {
+        if (mOutput != null) {
+            if (!mSheets.isEmpty()) {
+                throw new IOException("Cannot write more sheets than one into a single " + mFile.getName());
+            }
+            mWriter = new CsvWriter(Channels.newChannel(mOutput), mSeparator);
+        } else {
+            File f = mFile;
+            if (!mSheets.isEmpty()) {
+                finishSheet();
+                String fileName = mFile.getName();
+                int extension = fileName.lastIndexOf('.');
+                f = new File(mFile.getParentFile(), fileName.substring(0, extension) + "-" + name
+                    + fileName.substring(extension));
+            }
+            mWriter = new CsvWriter(new FileOutputStream(f).getChannel(), mSeparator);
+        }
+        mSheets.add(name);
+
+        String[] title = new String[langs.size() + 3];
+        title[0] = "KEY";
+        title[1] = "default";
+        title[2] = "Untranslatable";
+        for (int i = 0; i < langs.size(); i++) {
+            title[i + 3] = langs.get(i);
+        }
+        mWriter.writeRow(title);
+    }
+
+    @Override
+    boolean hasSheet(String name) {
+        return mSheets.contains(name);
+    }
+
+    @Override
+    void addComment(String content, boolean sectionTitle) throws IOException {
+        mWriter.writeRow(new String[]{String.format("/** %s **/", content)});
+    }
+
+    @Override
+    void addPlurals(String key) throws IOException {
+        mWriter.writeRow(new String[]{String.format("//plurals: %s", key)});
+    }
+
+    @Override
+    void addRow(String key, String value, boolean reference, boolean untranslatable, TranslationTable table,
+                int id) throws IOException {
+        String[] cells = new String[table.getLocaleCount() + 3];
+        cells[0] = key;
+        cells[1] = value;
+        cells[2] = untranslatable ? UNTRANSLATABLE_MARK : null;
+        for (int locale = 0; locale < table.getLocaleCount(); locale++) {
+            cells[locale + 3] = table.getValue(locale, id);
+        }
+        mWriter.writeRow(cells);
+    }
+
+    @Override
+    long write() throws IOException {
+        if (mSheets.isEmpty() && mOutput == null) {
+            // no sheet at all, the output file is left empty
+            new FileOutputStream(mFile).close();
+        }
+        finishSheet();
+        return mBytesWritten;
+    }
+
+    private void finishSheet() throws IOException {
+        if (mWriter == null) {
+            return;
+        }
+        if (mOutput != null) {
+            mWriter.flush();
+        } else {
+            mWriter.close();
+            mBytesWritten += mWriter.getBytesWritten();
+            mWriter = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mWriter != null && mOutput == null) {
+            mWriter.close();
+            mWriter = null;
+        }
+    }
+}
@@ -16,6 +16,12 @@ public class ExportConfig extends CommonConfig {
     public String inputExportProject;
     public String outputFile;
     public Set<String> additionalResources;
+    public boolean incremental;
+    public boolean allModules;
+    /** Keep exporting changes of the resources until stopped. */
+    public boolean watch;
+    /** File for a snapshot of the exported translations, null for none. */
+    public String snapshotFile;
 
     public ExportConfig() {
         super();
@@ -27,6 +33,10 @@ public class ExportConfig extends CommonConfig {
         this.inputExportProject = other.inputExportProject;
         this.outputFile = other.outputFile;
         this.additionalResources = new HashSet<String>(other.additionalResources);
+        this.incremental = other.incremental;
+        this.allModules = other.allModules;
+        this.watch = other.watch;
+        this.snapshotFile = other.snapshotFile;
     }
 
     public ExportConfig(CommandlineArguments args) {
@@ -35,6 +45,10 @@ public class ExportConfig extends CommonConfig {
         this.outputFile = args.getOutputFile();
         this.additionalResources = new HashSet<String>();
         addAdditionalResources(args.getAdditionalResources());
+        this.incremental = args.isIncremental();
+        this.allModules = args.isAllModules();
+        this.watch = args.isWatch();
+        this.snapshotFile = args.getSnapshotFile();
     }
 
     private void addAdditionalResources(String additionalResourcesRaw) {
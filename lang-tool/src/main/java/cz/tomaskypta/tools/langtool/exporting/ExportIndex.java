@@ -0,0 +1,149 @@
+package cz.tomaskypta.tools.langtool.exporting;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Sidecar index of an exported workbook used by the incremental export.
+ * <p>
+ * It keeps content hashes of all the exported resource files, of the ignore list and of the written workbook, so
+ * that the next export can find out which resource files changed since the workbook was written.
+ */
+class ExportIndex {
+
+    private static final String INDEX_EXTENSION = ".index";
+    private static final String FILE_PREFIX = "file.";
+    private static final String IGNORE_LIST = "ignore-list";
+    private static final String WORKBOOK = "workbook";
+
+    private final Properties mHashes;
+
+    private ExportIndex(Properties hashes) {
+        mHashes = hashes;
+    }
+
+    static File getIndexFile(File workbook) {
+        return new File(workbook.getPath() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Computes hashes of the current content of the exported files.
+     *
+     * @param files exported resource files, each of them in its values directory
+     */
+    static ExportIndex create(List<File> files, String ignoreListFile) throws IOException {
+        Properties hashes = new Properties();
+        for (File f : files) {
+            hashes.setProperty(FILE_PREFIX + getPath(f), hash(f));
+        }
+        File ignoreList = ignoreListFile == null ? null : new File(ignoreListFile);
+        hashes.setProperty(IGNORE_LIST, ignoreList != null && ignoreList.exists() ? hash(ignoreList) : "");
+        return new ExportIndex(hashes);
+    }
+
+    /**
+     * Computes hashes of the given files again, without hashing all the other exported files.
+     *
+     * @param files changed exported files, which are left out of the index when they no longer exist
+     * @return updated copy of this index
+     */
+    ExportIndex update(Collection<File> files) throws IOException {
+        Properties hashes = new Properties();
+        hashes.putAll(mHashes);
+        for (File f : files) {
+            if (f.exists()) {
+                hashes.setProperty(FILE_PREFIX + getPath(f), hash(f));
+            } else {
+                hashes.remove(FILE_PREFIX + getPath(f));
+            }
+        }
+        return new ExportIndex(hashes);
+    }
+
+    /**
+     * @return the index stored next to the workbook or null if there is none
+     */
+    static ExportIndex load(File workbook) throws IOException {
+        File indexFile = getIndexFile(workbook);
+        if (!indexFile.exists()) {
+            return null;
+        }
+        Properties hashes = new Properties();
+        InputStream in = new BufferedInputStream(new FileInputStream(indexFile));
+        try {
+            hashes.load(in);
+        } finally {
+            in.close();
+        }
+        return new ExportIndex(hashes);
+    }
+
+    void store(File workbook) throws IOException {
+        mHashes.setProperty(WORKBOOK, hash(workbook));
+        OutputStream out = new FileOutputStream(getIndexFile(workbook));
+        try {
+            mHashes.store(out, "Content hashes of the exported resources, do not edit");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return true if the given workbook is the one written together with this index
+     */
+    boolean isWorkbook(File workbook) throws IOException {
+        return workbook.exists() && hash(workbook).equals(mHashes.getProperty(WORKBOOK));
+    }
+
+    /**
+     * @return true if both the indexes have the same set of exported files and the same ignore list, so the
+     * workbook of the previous index has the same sheets, columns and rows
+     */
+    boolean hasSameFiles(ExportIndex previous) {
+        if (!mHashes.getProperty(IGNORE_LIST).equals(previous.mHashes.getProperty(IGNORE_LIST))) {
+            return false;
+        }
+        return getFiles().equals(previous.getFiles());
+    }
+
+    boolean isChanged(ExportIndex previous, File f) {
+        String key = FILE_PREFIX + getPath(f);
+        return !mHashes.getProperty(key).equals(previous.mHashes.getProperty(key));
+    }
+
+    private List<String> getFiles() {
+        List<String> files = new ArrayList<String>();
+        for (String key : mHashes.stringPropertyNames()) {
+            if (key.startsWith(FILE_PREFIX)) {
+                files.add(key);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static String getPath(File f) {
+        return f.getParentFile().getName() + "/" + f.getName();
+    }
+
+    private static String hash(File f) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(f));
+        try {
+            return DigestUtils.shaHex(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package cz.tomaskypta.tools.langtool.exporting;
+
+import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Cell styles of an exported workbook.
+ * <p>
+ * Each style and font is created only once per workbook, when it is used for the first time, and it is shared by
+ * all the sheets and columns. Workbooks have a limited number of styles and fonts.
+ */
+class ExportStyles {
+
+    private final Workbook mWb;
+
+    private Font mBoldFont;
+    private Font mCommentFont;
+    private CellStyle mTitleStyle;
+    private CellStyle mCommentStyle;
+    private CellStyle mSectionCommentStyle;
+    private CellStyle mUntranslatableStyle;
+    private CellStyle mStringReferenceStyle;
+    private CellStyle mPlurarStyle;
+    private CellStyle mKeyStyle;
+    private CellStyle mTextStyle;
+    private CellStyle mMissedStyle;
+
+    ExportStyles(Workbook wb) {
+        mWb = wb;
+    }
+
+    CellStyle getTitleStyle() {
+        if (mTitleStyle == null) {
+            CellStyle style = mWb.createCellStyle();
+            style.setFont(getBoldFont());
+            style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
+            style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+            style.setAlignment(CellStyle.ALIGN_CENTER);
+            style.setWrapText(true);
+            mTitleStyle = style;
+        }
+        return mTitleStyle;
+    }
+
+    CellStyle getCommentStyle() {
+        if (mCommentStyle == null) {
+            CellStyle commentStyle = mWb.createCellStyle();
+            commentStyle.setFont(getCommentFont());
+            mCommentStyle = commentStyle;
+        }
+        return mCommentStyle;
+    }
+
+    CellStyle getSectionCommentStyle() {
+        if (mSectionCommentStyle == null) {
+            CellStyle commentStyle = mWb.createCellStyle();
+            commentStyle.setFillForegroundColor(HSSFColor.GREEN.LIGHT_GREEN.index);
+            commentStyle.setFillPattern(CellStyle.SOLID_FOREGROUND);
+            commentStyle.setFont(getCommentFont());
+            mSectionCommentStyle = commentStyle;
+        }
+        return mSectionCommentStyle;
+    }
+
+    CellStyle getUntranslatableStyle() {
+        if (mUntranslatableStyle == null) {
+            CellStyle textStyle = mWb.createCellStyle();
+            textStyle.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
+            textStyle.setFillPattern(CellStyle.SOLID_FOREGROUND);
+            textStyle.setAlignment(CellStyle.ALIGN_CENTER);
+            textStyle.setFont(getBoldFont());
+            mUntranslatableStyle = textStyle;
+        }
+        return mUntranslatableStyle;
+    }
+
+    CellStyle getStringReferenceStyle() {
+        if (mStringReferenceStyle == null) {
+            CellStyle textStyle = mWb.createCellStyle();
+            Font font = mWb.createFont();
+            font.setItalic(true);
+            font.setFontHeightInPoints((short)12);
+            font.setColor(HSSFColor.GREY_40_PERCENT.index);
+            textStyle.setFont(font);
+            mStringReferenceStyle = textStyle;
+        }
+        return mStringReferenceStyle;
+    }
+
+    CellStyle getPlurarStyle() {
+        if (mPlurarStyle == null) {
+            Font commentFont = mWb.createFont();
+            commentFont.setColor(HSSFColor.GREY_50_PERCENT.index);
+            commentFont.setItalic(true);
+            commentFont.setFontHeightInPoints((short)12);
+
+            CellStyle commentStyle = mWb.createCellStyle();
+            commentStyle.setFont(commentFont);
+            mPlurarStyle = commentStyle;
+        }
+        return mPlurarStyle;
+    }
+
+    CellStyle getKeyStyle() {
+        if (mKeyStyle == null) {
+            Font bold = mWb.createFont();
+            bold.setBoldweight(Font.BOLDWEIGHT_BOLD);
+            bold.setFontHeightInPoints((short)11);
+
+            CellStyle keyStyle = mWb.createCellStyle();
+            keyStyle.setFont(bold);
+            mKeyStyle = keyStyle;
+        }
+        return mKeyStyle;
+    }
+
+    CellStyle getTextStyle() {
+        if (mTextStyle == null) {
+            Font plain = mWb.createFont();
+            plain.setFontHeightInPoints((short)12);
+
+            CellStyle textStyle = mWb.createCellStyle();
+            textStyle.setFont(plain);
+            mTextStyle = textStyle;
+        }
+        return mTextStyle;
+    }
+
+    CellStyle getMissedStyle() {
+        if (mMissedStyle == null) {
+            CellStyle style = mWb.createCellStyle();
+            style.setFillForegroundColor(HSSFColor.RED.index);
+            style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+            mMissedStyle = style;
+        }
+        return mMissedStyle;
+    }
+
+    private Font getBoldFont() {
+        if (mBoldFont == null) {
+            mBoldFont = mWb.createFont();
+            mBoldFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
+        }
+        return mBoldFont;
+    }
+
+    private Font getCommentFont() {
+        if (mCommentFont == null) {
+            mCommentFont = mWb.createFont();
+            mCommentFont.setColor(HSSFColor.GREEN.index);
+            mCommentFont.setItalic(true);
+            mCommentFont.setFontHeightInPoints((short)12);
+        }
+        return mCommentFont;
+    }
+}
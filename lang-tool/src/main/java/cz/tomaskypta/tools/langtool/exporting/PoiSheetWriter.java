@@ -0,0 +1,299 @@
+package cz.tomaskypta.tools.langtool.exporting;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import cz.tomaskypta.tools.langtool.TranslationTable;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Writes exported sheets with their styles into a .xls or .xlsx workbook through Apache POI.
+ * <p>
+ * All the code using Apache POI for exporting is kept here, so exports into CSV or TSV do not load it at all.
+ */
+class PoiSheetWriter extends SheetWriter {
+
+    /**
+     * Number of rows kept in memory when exporting to .xlsx, older rows are flushed to a temporary file.
+     */
+    private static final int XLSX_ROW_WINDOW = 100;
+
+    private final Workbook mWb;
+    private final ExportStyles mStyles;
+    private final File mFile;
+    private final OutputStream mOutput;
+    private Sheet mSheet;
+    private int mRowIndex;
+
+    /**
+     * @param output stream for the workbook, which is not closed, or null to write the workbook into the file
+     */
+    PoiSheetWriter(Workbook wb, File file, OutputStream output) {
+        mWb = wb;
+        mStyles = new ExportStyles(wb);
+        mFile = file;
+        mOutput = output;
+    }
+
+    static PoiSheetWriter createXls(File file, OutputStream output) {
+        return new PoiSheetWriter(new HSSFWorkbook(), file, output);
+    }
+
+    /**
+     * @param streaming true to keep only a window of rows in memory
+     */
+    static PoiSheetWriter createXlsx(File file, OutputStream output, boolean streaming) {
+        return new PoiSheetWriter(streaming ? new SXSSFWorkbook(XLSX_ROW_WINDOW) : new XSSFWorkbook(), file, output);
+    }
+
+    /**
+     * Opens a previously exported .xls workbook for updating it in place.
+     */
+    static PoiSheetWriter openXls(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return new PoiSheetWriter(new HSSFWorkbook(in), file, null);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Rewrites the cells of a language column whose values differ from the values of the table. Keys of all the
+     * rows are added to the table, with their rows and untranslatable flags.
+     *
+     * @param table table of the single locale of the column
+     * @return number of the rewritten cells, -1 if the workbook has no such sheet or the sheet no such column
+     */
+    int updateLangColumn(String sheetName, TranslationTable table) {
+        Sheet sheet = mWb.getSheet(sheetName);
+        if (sheet == null) {
+            return -1;
+        }
+        String lang = table.getLocale(0);
+        Row titleRow = sheet.getRow(0);
+        int column = -1;
+        for (int i = 3; titleRow != null && i < titleRow.getLastCellNum(); i++) {
+            Cell cell = titleRow.getCell(i);
+            if (cell != null && lang.equals(cell.getStringCellValue())) {
+                column = i;
+                break;
+            }
+        }
+        if (column < 0) {
+            return -1;
+        }
+
+        CellStyle textStyle = null;
+        CellStyle untranslatableStyle = null;
+        CellStyle missedStyle = null;
+        int updated = 0;
+        for (int i = 1; i <= sheet.getLastRowNum(); i++) {
+            Row row = sheet.getRow(i);
+            // only rows of strings and items have the untranslatable column
+            if (row == null || row.getCell(0) == null || row.getCell(2) == null) {
+                continue;
+            }
+            String key = row.getCell(0).getStringCellValue();
+            boolean untranslatable = UNTRANSLATABLE_MARK.equals(row.getCell(2).getStringCellValue());
+            int id = table.intern(key);
+            table.setFlag(TranslationTable.FLAG_UNTRANSLATABLE, id, untranslatable);
+            table.setRow(id, i);
+            if (untranslatable) {
+                untranslatableStyle = row.getCell(2).getCellStyle();
+            } else {
+                textStyle = row.getCell(2).getCellStyle();
+            }
+
+            Cell cell = row.getCell(column);
+            if (cell == null) {
+                cell = row.createCell(column);
+            }
+            String value = table.getValue(0, id);
+            if (value != null) {
+                if (cell.getCellType() == Cell.CELL_TYPE_STRING && value.equals(cell.getStringCellValue())) {
+                    continue;
+                }
+                if (textStyle == null) {
+                    textStyle = mStyles.getTextStyle();
+                }
+                cell.setCellValue(value);
+                cell.setCellStyle(textStyle);
+            } else {
+                if (cell.getCellType() == Cell.CELL_TYPE_BLANK) {
+                    continue;
+                }
+                cell.setCellType(Cell.CELL_TYPE_BLANK);
+                if (untranslatable) {
+                    cell.setCellStyle(untranslatableStyle);
+                } else {
+                    if (missedStyle == null) {
+                        missedStyle = findMissedStyle();
+                    }
+                    cell.setCellStyle(missedStyle);
+                }
+            }
+            updated++;
+        }
+        return updated;
+    }
+
+    /**
+     * Finds the style of missed translations in a previously exported workbook, so that no new style is added to
+     * the workbook by each update.
+     */
+    private CellStyle findMissedStyle() {
+        for (short i = 0; i < mWb.getNumCellStyles(); i++) {
+            CellStyle style = mWb.getCellStyleAt(i);
+            if (style.getFillPattern() == CellStyle.SOLID_FOREGROUND
+                && style.getFillForegroundColor() == HSSFColor.RED.index) {
+                return style;
+            }
+        }
+        return mStyles.getMissedStyle();
+    }
+
+    @Override
+    void startSheet(String name, List<String> langs) {
+        mSheet = mWb.createSheet(name);
+        mSheet.createRow(0);
+        createTilte();
+        addLang2Tilte("default");
+        addTranslatable();
+        for (String lang : langs) {
+            addLang2Tilte(lang);
+        }
+        mSheet.createFreezePane(1, 1);
+        mRowIndex = 1;
+
+        // styles of the rows are created always in the same order, regardless of the rows of the first sheet
+        mStyles.getSectionCommentStyle();
+        mStyles.getCommentStyle();
+        mStyles.getPlurarStyle();
+        mStyles.getKeyStyle();
+        mStyles.getTextStyle();
+        mStyles.getUntranslatableStyle();
+        mStyles.getStringReferenceStyle();
+        mStyles.getMissedStyle();
+    }
+
+    @Override
+    boolean hasSheet(String name) {
+        return mWb.getSheetIndex(name) >= 0;
+    }
+
+    private void createTilte() {
+        Row titleRow = mSheet.getRow(0);
+
+        Cell cell = titleRow.createCell(0);
+        cell.setCellStyle(mStyles.getTitleStyle());
+        cell.setCellValue("KEY");
+
+        mSheet.setColumnWidth(cell.getColumnIndex(), (40 * 256));
+    }
+
+    private void addTranslatable() {
+        Row titleRow = mSheet.getRow(0);
+
+        Cell cell = titleRow.createCell(2);
+        cell.setCellStyle(mStyles.getTitleStyle());
+        cell.setCellValue("Untranslatable");
+
+        mSheet.setColumnWidth(cell.getColumnIndex(), (18 * 256));
+    }
+
+    private void addLang2Tilte(String lang) {
+        Row titleRow = mSheet.getRow(0);
+        Cell cell = titleRow.createCell((int)titleRow.getLastCellNum());
+        cell.setCellStyle(mStyles.getTitleStyle());
+        cell.setCellValue(lang);
+
+        mSheet.setColumnWidth(cell.getColumnIndex(), (60 * 256));
+    }
+
+    @Override
+    void addComment(String content, boolean sectionTitle) {
+        Row row = mSheet.createRow(mRowIndex++);
+        Cell cell = row.createCell(0);
+        cell.setCellValue(String.format("/** %s **/", content));
+        cell.setCellStyle(sectionTitle? mStyles.getSectionCommentStyle(): mStyles.getCommentStyle());
+        mSheet.addMergedRegion(new CellRangeAddress(row.getRowNum(), row.getRowNum(), 0, 255));
+    }
+
+    @Override
+    void addPlurals(String key) {
+        Row row = mSheet.createRow(mRowIndex++);
+        Cell cell = row.createCell(0);
+        cell.setCellValue(String.format("//plurals: %s", key));
+        cell.setCellStyle(mStyles.getPlurarStyle());
+    }
+
+    @Override
+    void addRow(String key, String value, boolean reference, boolean untranslatable, TranslationTable table,
+                int id) {
+        CellStyle textStyle = mStyles.getTextStyle();
+        CellStyle untranslatableStyle = mStyles.getUntranslatableStyle();
+        Row row = mSheet.createRow(mRowIndex++);
+
+        Cell cell = row.createCell(0);
+        cell.setCellValue(key);
+        cell.setCellStyle(mStyles.getKeyStyle());
+
+        cell = row.createCell(1);
+        cell.setCellStyle(reference? mStyles.getStringReferenceStyle(): textStyle);
+        cell.setCellValue(value);
+
+        cell = row.createCell(2);
+        cell.setCellStyle(untranslatable? untranslatableStyle: textStyle);
+        cell.setCellValue(untranslatable? UNTRANSLATABLE_MARK: "");
+
+        int column = 3;
+        for (int locale = 0; locale < table.getLocaleCount(); locale++) {
+            cell = row.createCell(column++);
+            String translation = table.getValue(locale, id);
+            if (translation != null) {
+                cell.setCellValue(translation);
+                cell.setCellStyle(textStyle);
+            } else {
+                cell.setCellStyle(untranslatable? untranslatableStyle: mStyles.getMissedStyle());
+            }
+        }
+    }
+
+    @Override
+    long write() throws IOException {
+        if (mOutput != null) {
+            mWb.write(mOutput);
+            return 0;
+        }
+        FileOutputStream outFile = new FileOutputStream(mFile);
+        try {
+            mWb.write(outFile);
+        } finally {
+            outFile.close();
+        }
+        return mFile.length();
+    }
+
+    @Override
+    public void close() {
+        if (mWb instanceof SXSSFWorkbook) {
+            ((SXSSFWorkbook)mWb).dispose();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package cz.tomaskypta.tools.langtool.exporting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds resource directories of all the modules, flavors and source sets of a project.
+ * <p>
+ * A resource directory is any directory named {@code res} containing a {@code values} directory. The project tree is
+ * walked in parallel, every directory is listed by its own fork/join task. Build outputs, hidden directories and
+ * the found resource directories themselves are not walked into.
+ */
+class ResourceDirFinder {
+
+    private static final String RES_DIR = "res";
+    private static final String VALUES_DIR = "values";
+    private static final Set<String> SKIPPED_DIRS = new HashSet<String>(Arrays.asList("build", "target", "out",
+        "bin", "gen", "intermediates", "node_modules"));
+
+    private ResourceDirFinder() {
+    }
+
+    /**
+     * @return found resource directories sorted by their paths
+     */
+    static List<File> find(File project, int threads) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            List<Path> found = pool.invoke(new WalkTask(project.toPath()));
+            List<File> resDirs = new ArrayList<File>();
+            for (Path path : found) {
+                resDirs.add(path.toFile());
+            }
+            Collections.sort(resDirs);
+            return resDirs;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return name of the module the resource directory belongs to, its path relative to the project without the
+     * {@code src} and {@code res} directories, e.g. {@code app/debug} for {@code app/src/debug/res}
+     */
+    static String getModuleName(File project, File resDir) {
+        Path relative = project.toPath().relativize(resDir.toPath());
+        StringBuilder sb = new StringBuilder();
+        for (Path segment : relative) {
+            String name = segment.toString();
+            if ("src".equals(name) || RES_DIR.equals(name)) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(name);
+        }
+        return sb.length() > 0 ? sb.toString() : project.getName();
+    }
+
+    private static class WalkTask extends RecursiveTask<List<Path>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path mDir;
+
+        WalkTask(Path dir) {
+            mDir = dir;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            List<Path> found = new ArrayList<Path>();
+            if (isResourceDir(mDir)) {
+                found.add(mDir);
+                return found;
+            }
+            List<WalkTask> subtasks = new ArrayList<WalkTask>();
+            try {
+                DirectoryStream<Path> children = Files.newDirectoryStream(mDir);
+                try {
+                    for (Path child : children) {
+                        String name = child.getFileName().toString();
+                        if (name.startsWith(".") || SKIPPED_DIRS.contains(name)
+                            || !Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                            continue;
+                        }
+                        WalkTask subtask = new WalkTask(child);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    }
+                } finally {
+                    children.close();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (WalkTask subtask : subtasks) {
+                found.addAll(subtask.join());
+            }
+            return found;
+        }
+
+        private static boolean isResourceDir(Path dir) {
+            return RES_DIR.equals(String.valueOf(dir.getFileName()))
+                && Files.isDirectory(dir.resolve(VALUES_DIR), LinkOption.NOFOLLOW_LINKS);
+        }
+    }
+}
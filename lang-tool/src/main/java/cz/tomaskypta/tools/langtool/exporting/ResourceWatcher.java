@@ -0,0 +1,121 @@
+package cz.tomaskypta.tools.langtool.exporting;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the values directories of a resource directory for changes of the exported files.
+ * <p>
+ * Changes are collected in batches, a batch ends once no further change comes for the debounce time, so saving
+ * several files at once, or a file in several writes, is exported only once.
+ */
+class ResourceWatcher implements Closeable {
+
+    private static final String VALUES_DIR = "values";
+
+    private final File mRes;
+    private final Set<String> mFileNames;
+    private final long mDebounceMillis;
+    private final WatchService mWatcher;
+    /** Watched directories by their keys. */
+    private final Map<WatchKey, File> mDirs = new HashMap<WatchKey, File>();
+
+    /**
+     * @param fileNames names of the exported files, changes of other files are ignored
+     */
+    ResourceWatcher(File res, Set<String> fileNames, long debounceMillis) throws IOException {
+        mRes = res;
+        mFileNames = fileNames;
+        mDebounceMillis = debounceMillis;
+        mWatcher = res.toPath().getFileSystem().newWatchService();
+        // values directories added or removed
+        mDirs.put(res.toPath().register(mWatcher, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE), res);
+    }
+
+    /**
+     * Watches the given values directories instead of the ones watched so far.
+     */
+    void watchDirs(File defDir, List<File> langDirs) throws IOException {
+        for (Iterator<Map.Entry<WatchKey, File>> it = mDirs.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<WatchKey, File> entry = it.next();
+            if (!entry.getValue().equals(mRes)) {
+                entry.getKey().cancel();
+                it.remove();
+            }
+        }
+        watchDir(defDir);
+        for (File dir : langDirs) {
+            watchDir(dir);
+        }
+    }
+
+    private void watchDir(File dir) throws IOException {
+        mDirs.put(dir.toPath().register(mWatcher, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+    }
+
+    /**
+     * Waits for the next batch of changes.
+     *
+     * @param files filled with the changed, added and removed exported files
+     * @return true if values directories were added or removed, or changes were lost, so the directories have to be
+     * listed again
+     */
+    boolean awaitChanges(Set<File> files) throws InterruptedException {
+        boolean dirsChanged = false;
+        WatchKey key = mWatcher.take();
+        while (key != null) {
+            dirsChanged |= collect(key, files);
+            key = mWatcher.poll(mDebounceMillis, TimeUnit.MILLISECONDS);
+        }
+        return dirsChanged;
+    }
+
+    /**
+     * @return true if values directories were added or removed
+     */
+    private boolean collect(WatchKey key, Set<File> files) {
+        File dir = mDirs.get(key);
+        if (dir == null) {
+            // events of a directory watched before
+            key.pollEvents();
+            return false;
+        }
+        boolean dirsChanged = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                dirsChanged = true;
+                continue;
+            }
+            String name = event.context().toString();
+            if (dir.equals(mRes)) {
+                dirsChanged |= name.startsWith(VALUES_DIR);
+            } else if (mFileNames.contains(name)) {
+                files.add(new File(dir, name));
+            }
+        }
+        if (!key.reset()) {
+            // the directory itself was removed
+            mDirs.remove(key);
+            dirsChanged = true;
+        }
+        return dirsChanged;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWatcher.close();
+    }
+}
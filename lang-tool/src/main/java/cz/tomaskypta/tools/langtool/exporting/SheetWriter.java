@@ -0,0 +1,94 @@
+package cz.tomaskypta.tools.langtool.exporting;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import cz.tomaskypta.tools.langtool.TranslationTable;
+
+/**
+ * Writes exported sheets row by row, in order, into a workbook of a particular format.
+ * <p>
+ * Every sheet starts with the title row of the key, the default language, the untranslatable flag and the
+ * languages, followed by a row for every comment, plurals, string and item of the default resource file.
+ */
+abstract class SheetWriter implements Closeable {
+
+    static final String UNTRANSLATABLE_MARK = "✓";
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+
+    /**
+     * Makes a valid sheet name the same way as {@code WorkbookUtil.createSafeSheetName} of Apache POI, without
+     * loading it for exports into CSV or TSV. Invalid characters are replaced by spaces.
+     */
+    static String createSafeSheetName(String name) {
+        if (name == null) {
+            return "null";
+        }
+        if (name.isEmpty()) {
+            return "empty";
+        }
+        StringBuilder sb = new StringBuilder(name.substring(0, Math.min(MAX_SHEET_NAME_LENGTH, name.length())));
+        for (int i = 0; i < sb.length(); i++) {
+            switch (sb.charAt(i)) {
+                case '\u0000':
+                case '\u0003':
+                case ':':
+                case '/':
+                case '\\':
+                case '?':
+                case '*':
+                case ']':
+                case '[':
+                    sb.setCharAt(i, ' ');
+                    break;
+                case '\'':
+                    if (i == 0 || i == sb.length() - 1) {
+                        sb.setCharAt(i, ' ');
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Starts a new sheet with its title row, further rows are added to it.
+     */
+    abstract void startSheet(String name, List<String> langs) throws IOException;
+
+    abstract boolean hasSheet(String name);
+
+    /**
+     * @param sectionTitle true for a comment starting a section of the resource file
+     */
+    abstract void addComment(String content, boolean sectionTitle) throws IOException;
+
+    abstract void addPlurals(String key) throws IOException;
+
+    /**
+     * Adds a row of a string or an item with its translations from the locales of the table.
+     *
+     * @param reference true if the default value references another string
+     * @param id id of the key in the table
+     */
+    abstract void addRow(String key, String value, boolean reference, boolean untranslatable, TranslationTable table,
+                         int id) throws IOException;
+
+    /**
+     * Finishes the sheet after its last row.
+     *
+     * @param table table of all the keys and translations of the sheet, including the keys without a row
+     */
+    void endSheet(TranslationTable table) throws IOException {
+    }
+
+    /**
+     * Writes the workbook out.
+     *
+     * @return number of bytes written into files
+     */
+    abstract long write() throws IOException;
+}
@@ -0,0 +1,77 @@
+package cz.tomaskypta.tools.langtool.exporting;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import cz.tomaskypta.tools.langtool.TranslationSnapshot;
+import cz.tomaskypta.tools.langtool.TranslationTable;
+
+/**
+ * Passes the exported sheets to another writer and records them into a {@link TranslationSnapshot} at the same
+ * time.
+ */
+class SnapshotSheetWriter extends SheetWriter {
+
+    private final SheetWriter mWriter;
+    private final File mFile;
+    private final TranslationSnapshot.Builder mBuilder = new TranslationSnapshot.Builder();
+
+    SnapshotSheetWriter(SheetWriter writer, File file) {
+        mWriter = writer;
+        mFile = file;
+    }
+
+    @Override
+    void startSheet(String name, List<String> langs) throws IOException {
+        mWriter.startSheet(name, langs);
+        mBuilder.startSheet(name, langs);
+    }
+
+    @Override
+    boolean hasSheet(String name) {
+        return mWriter.hasSheet(name);
+    }
+
+    @Override
+    void addComment(String content, boolean sectionTitle) throws IOException {
+        mWriter.addComment(content, sectionTitle);
+        mBuilder.addComment(content, sectionTitle);
+    }
+
+    @Override
+    void addPlurals(String key) throws IOException {
+        mWriter.addPlurals(key);
+        mBuilder.addPlurals(key);
+    }
+
+    @Override
+    void addRow(String key, String value, boolean reference, boolean untranslatable, TranslationTable table,
+                int id) throws IOException {
+        mWriter.addRow(key, value, reference, untranslatable, table, id);
+        mBuilder.addRow(id, value);
+    }
+
+    @Override
+    void endSheet(TranslationTable table) throws IOException {
+        mWriter.endSheet(table);
+        mBuilder.endSheet(table);
+    }
+
+    @Override
+    long write() throws IOException {
+        return mWriter.write();
+    }
+
+    /**
+     * @return number of bytes of the snapshot
+     */
+    long writeSnapshot() throws IOException {
+        return mBuilder.write(mFile);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWriter.close();
+    }
+}
@@ -0,0 +1,181 @@
+package cz.tomaskypta.tools.langtool.exporting;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader of Android string resource files.
+ * <p>
+ * Reads the file with a StAX pull parser and reports comments, strings, plurals and string arrays to a
+ * {@link Handler} as soon as each of them is read, so only a single entry is held in memory at a time.
+ */
+public class StringsReader {
+
+    public interface Handler {
+
+        void onComment(String comment) throws IOException;
+
+        void onString(String key, String value, boolean translatable) throws IOException;
+
+        void onPlurals(String key) throws IOException;
+
+        void onPluralsItem(String key, String quantity, String value) throws IOException;
+
+        void onArrayItem(String key, int index, String value) throws IOException;
+    }
+
+    private static final XMLInputFactory sFactory = XMLInputFactory.newInstance();
+
+    static {
+        sFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        // the files may be uploaded to the server, they must not pull in local files or URLs
+        sFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        sFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    private StringsReader() {
+    }
+
+    public static void read(File f, Handler handler) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(f));
+        try {
+            read(in, handler);
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot parse " + f, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void read(InputStream in, Handler handler) throws XMLStreamException, IOException {
+        XMLStreamReader reader;
+        synchronized (sFactory) {
+            reader = sFactory.createXMLStreamReader(in);
+        }
+        try {
+            // move to the root element
+            while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+            }
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.COMMENT) {
+                    handler.onComment(reader.getText());
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    readResource(reader, handler);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    // end of the root element
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void readResource(XMLStreamReader reader, Handler handler)
+        throws XMLStreamException, IOException {
+        String nodeName = reader.getLocalName();
+        if ("string".equals(nodeName)) {
+            String key = reader.getAttributeValue(null, "name");
+            boolean translatable = !"false".equals(reader.getAttributeValue(null, "translatable"));
+            handler.onString(key, readText(reader), translatable);
+        } else if ("plurals".equals(nodeName)) {
+            String key = reader.getAttributeValue(null, "name");
+            handler.onPlurals(key);
+            while (nextChildElement(reader)) {
+                if ("item".equals(reader.getLocalName())) {
+                    String quantity = reader.getAttributeValue(null, "quantity");
+                    handler.onPluralsItem(key, quantity, readText(reader));
+                } else {
+                    skipElement(reader);
+                }
+            }
+        } else if ("string-array".equals(nodeName)) {
+            String key = reader.getAttributeValue(null, "name");
+            int index = 0;
+            while (nextChildElement(reader)) {
+                if ("item".equals(reader.getLocalName())) {
+                    handler.onArrayItem(key, index++, readText(reader));
+                } else {
+                    skipElement(reader);
+                }
+            }
+        } else {
+            skipElement(reader);
+        }
+    }
+
+    /**
+     * Moves to the next child element of the current element.
+     *
+     * @return false if the end of the current element was reached instead
+     */
+    private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the text content of the current element including text of all its descendants, the same way as
+     * {@link org.w3c.dom.Node#getTextContent()} does. The reader is left at the end of the element.
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder sb = null;
+        String text = "";
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    if (sb == null && text.isEmpty()) {
+                        text = reader.getText();
+                    } else {
+                        if (sb == null) {
+                            sb = new StringBuilder(text);
+                        }
+                        sb.append(reader.getText());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return sb == null ? text : sb.toString();
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -2,44 +2,60 @@ package cz.tomaskypta.tools.langtool.exporting;
 
 import java.io.*;
 import java.util.*;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 import javax.xml.parsers.ParserConfigurationException;
-
+import javax.xml.stream.XMLStreamException;
+
+import cz.tomaskypta.tools.langtool.ResourceTree;
+import cz.tomaskypta.tools.langtool.TranslationSnapshot;
+import cz.tomaskypta.tools.langtool.TranslationTable;
+import cz.tomaskypta.tools.langtool.util.Metrics;
+import cz.tomaskypta.tools.langtool.util.NullOutputStream;
+import cz.tomaskypta.tools.langtool.util.StringPool;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.*;
-import org.apache.poi.hssf.util.HSSFColor;
-import org.apache.poi.ss.util.CellRangeAddress;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 
 public class ToolExport {
 
     private static final String EXCEL_EXTENSION = ".xls";
+    private static final String EXCEL_XML_EXTENSION = ".xlsx";
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String TSV_EXTENSION = ".tsv";
 
     private static final String DIR_VALUES = "values";
     private static final String[] POTENTIAL_RES_DIRS = new String[]{"res", "src/main/res"};
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+    /** Time without further changes after which the changed resources are exported. */
+    private static final long WATCH_DEBOUNCE_MILLIS = 300;
 
-    private DocumentBuilder builder;
     private File outExcelFile;
+    private SheetWriter mWriter;
+    /** Writer recording the snapshot, null when no snapshot is written. */
+    private SnapshotSheetWriter mSnapshot;
     private String project;
-    private Map<String, Map<String, Integer>> fileKeys;
-    private Map<String, Boolean> untranslatableMap;
     private PrintStream out;
     private ExportConfig mConfig;
     private Set<String> sAllowedFiles = new HashSet<String>();
+    private Map<File, ForkJoinTask<TranslationTable>> mParsedFiles =
+        new HashMap<File, ForkJoinTask<TranslationTable>>();
+    private ForkJoinPool mPool;
+    private Metrics mMetrics;
+    /** Pool of the translated values, shared by all the languages and files. */
+    private StringPool mStrings = new StringPool();
+    /** Resources exported from memory instead of the disk, its files are identified by relative paths. */
+    private ResourceTree mTree;
+    private OutputStream mOutput;
 
     {
         sAllowedFiles.add("strings.xml");
     }
 
-    public ToolExport(PrintStream out) throws ParserConfigurationException {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        builder = dbf.newDocumentBuilder();
-        this.untranslatableMap = new HashMap<String, Boolean>();
+    public ToolExport(PrintStream out) {
         this.out = out == null ? System.out : out;
     }
 
@@ -58,7 +74,10 @@ public class ToolExport {
         if (StringUtils.isEmpty(config.outputFile)) {
             config.outputFile = "exported_strings_" + System.currentTimeMillis() + EXCEL_EXTENSION;
         }
-        else if (!StringUtils.endsWith(config.outputFile, EXCEL_EXTENSION)) {
+        else if (!StringUtils.endsWith(config.outputFile, EXCEL_EXTENSION)
+            && !StringUtils.endsWith(config.outputFile, EXCEL_XML_EXTENSION)
+            && !StringUtils.endsWith(config.outputFile, CSV_EXTENSION)
+            && !StringUtils.endsWith(config.outputFile, TSV_EXTENSION)) {
             config.outputFile += EXCEL_EXTENSION;
         }
         tool.outExcelFile = new File(config.outputFile);
@@ -75,482 +94,797 @@ public class ToolExport {
 
         tool.project = project.getName();
         tool.mConfig = config;
+        tool.mMetrics = config.metrics;
+        tool.sAllowedFiles.addAll(config.additionalResources);
+        if (project.isFile()) {
+            if (config.watch) {
+                tool.out.println("Watch mode needs a project dir, exporting once");
+            }
+            tool.exportSnapshot(project);
+        } else {
+            tool.export(project);
+        }
+        tool.mStrings.count(config.metrics);
+    }
+
+    /**
+     * Exports resources kept in memory into a workbook written to the stream, without touching the disk. Many
+     * exports can run at once, each with its own config.
+     * <p>
+     * The workbook is .xlsx, .csv or .tsv when the output file of the config has such extension, otherwise .xls. A
+     * CSV or TSV workbook can hold only a single sheet. Incremental export and export of all modules are not
+     * supported.
+     *
+     * @param out stream for the progress output, null for none
+     * @param workbook stream for the workbook, which is not closed
+     */
+    public static void exportTree(PrintStream out, ExportConfig config, ResourceTree resources, OutputStream workbook)
+        throws IOException {
+        ToolExport tool = new ToolExport(out == null ? new PrintStream(new NullOutputStream()) : out);
+        tool.outExcelFile = new File(StringUtils.defaultIfEmpty(config.outputFile, "strings" + EXCEL_EXTENSION));
+        tool.project = StringUtils.defaultIfEmpty(config.inputExportProject, "project");
+        tool.mConfig = config;
+        tool.mMetrics = config.metrics;
+        tool.mTree = resources;
+        tool.mOutput = workbook;
         tool.sAllowedFiles.addAll(config.additionalResources);
-        tool.export(project);
+
+        List<File> langDirs = new ArrayList<File>();
+        File defDir = tool.listValuesDirs(null, langDirs);
+        if (defDir == null) {
+            throw new IOException("Cannot find default values directory.");
+        }
+        tool.exportWorkbook(defDir, langDirs);
+        tool.mStrings.count(config.metrics);
     }
 
-    private void export(File project) throws SAXException, IOException {
+    private void export(File project) throws IOException {
+        if (mConfig.allModules) {
+            if (mConfig.watch) {
+                out.println("Watch mode is not supported for all modules, exporting once");
+            }
+            exportModules(project);
+            return;
+        }
+        long start = System.nanoTime();
         File res = findResourceDir(project);
         if (res == null) {
             System.err.println("Cannot find resource directory.");
             return;
         }
-        this.fileKeys = new HashMap<String, Map<String, Integer>>();
-        for (File dir : res.listFiles()) {
-            if (!dir.isDirectory() || !dir.getName().startsWith(DIR_VALUES)) {
-                continue;
-            }
-            if (dir.getName().equals(DIR_VALUES)) {
-                exportDefLang(dir);
-                break;
-            }
+
+        List<File> langDirs = new ArrayList<File>();
+        File defDir = listValuesDirs(res, langDirs);
+        mMetrics.addPhase(Metrics.PHASE_DISCOVERY, System.nanoTime() - start);
+        if (defDir == null) {
+            System.err.println("Cannot find default values directory.");
+            return;
         }
-        for (File dir : res.listFiles()) {
-            if (!dir.isDirectory() || !dir.getName().startsWith(DIR_VALUES)) {
-                continue;
-            }
-            String dirName = dir.getName();
-            if (!dirName.equals(DIR_VALUES))  {
-                int index = dirName.indexOf('-');
-                if (index == -1)
-                    continue;
-                String lang = dirName.substring(index + 1);
-                exportLang(lang, dir);
-            }
+
+        ExportIndex index = null;
+        if (mConfig.incremental || mConfig.watch) {
+            index = ExportIndex.create(getExportedFiles(defDir, langDirs), mConfig.ignoreListFile);
+        }
+        exportChanges(defDir, langDirs, index);
+        if (mConfig.watch) {
+            watch(res, defDir, langDirs, index);
         }
     }
 
-    private File findResourceDir(File project) {
-        List<File> availableResDirs = new LinkedList<File>();
-        for (String potentialResDir : POTENTIAL_RES_DIRS) {
-            File res = new File(project, potentialResDir);
-            if (res.exists()) {
-                availableResDirs.add(res);
-            }
+    /**
+     * Exports the resources into the workbook. With an index only the files changed since the previous export are
+     * updated in the workbook, if it is possible.
+     *
+     * @param index index of the current resources or null for a complete export without an index
+     */
+    private void exportChanges(File defDir, List<File> langDirs, ExportIndex index) throws IOException {
+        if (index != null && mConfig.snapshotFile != null) {
+            out.println("Incremental export cannot write a snapshot, exporting everything");
+        } else if (index != null && exportIncremental(defDir, langDirs, index)) {
+            index.store(outExcelFile);
+            return;
         }
-        if (!availableResDirs.isEmpty()) {
-            return availableResDirs.get(0);
+
+        exportWorkbook(defDir, langDirs);
+        if (index != null) {
+            index.store(outExcelFile);
         }
-        return null;
     }
 
-    private void exportLang(String lang, File valueDir) throws IOException, SAXException {
-        for (String fileName : sAllowedFiles) {
-            File stringFile = new File(valueDir, fileName);
-            if (!stringFile.exists()) {
-                continue;
+    /**
+     * Keeps the workbook up to date with the resources until the thread is interrupted. Only the changed files are
+     * hashed and parsed again, changes coming in a quick succession are exported together.
+     */
+    private void watch(File res, File defDir, List<File> langDirs, ExportIndex index) throws IOException {
+        ResourceWatcher watcher = new ResourceWatcher(res, sAllowedFiles, WATCH_DEBOUNCE_MILLIS);
+        try {
+            watcher.watchDirs(defDir, langDirs);
+            finishBatch();
+            out.println();
+            out.println("Watching " + res.getPath() + " for changes, press Ctrl+C to stop");
+            while (true) {
+                Set<File> changedFiles = new TreeSet<File>();
+                boolean dirsChanged = watcher.awaitChanges(changedFiles);
+                if (changedFiles.isEmpty() && !dirsChanged) {
+                    continue;
+                }
+                out.println();
+                for (File f : changedFiles) {
+                    out.println("Changed: " + getDirName(f) + "/" + f.getName());
+                }
+                long start = System.nanoTime();
+                try {
+                    if (dirsChanged || index == null) {
+                        langDirs = new ArrayList<File>();
+                        defDir = listValuesDirs(res, langDirs);
+                        if (defDir == null) {
+                            throw new IOException("Cannot find default values directory.");
+                        }
+                        watcher.watchDirs(defDir, langDirs);
+                        index = ExportIndex.create(getExportedFiles(defDir, langDirs), mConfig.ignoreListFile);
+                    } else {
+                        index = index.update(changedFiles);
+                    }
+                    exportChanges(defDir, langDirs, index);
+                    out.println(String.format("Workbook updated in %d ms",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                } catch (IOException e) {
+                    // e.g. a file saved only partially, everything is hashed again with the next change
+                    System.err.println("Cannot export changes: " + e.getMessage());
+                    index = null;
+                }
+                finishBatch();
             }
-            Map<String, Integer> keysIndex = this.fileKeys.get(fileName);
-            exportLangToExcel(project, lang, stringFile, getStrings(stringFile), outExcelFile, keysIndex);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            watcher.close();
         }
     }
 
-    private void exportDefLang(File valueDir) throws IOException, SAXException {
-        HSSFWorkbook wb = new HSSFWorkbook();
-        for (String fileName : sAllowedFiles) {
-            Map<String, Integer> keys = new HashMap<String, Integer>();
-            FileOutputStream outFile = new FileOutputStream(outExcelFile);
-            HSSFSheet sheet;
-            sheet = wb.createSheet(fileName);
-            sheet.createRow(0);
-            createTilte(wb, sheet);
-            addLang2Tilte(wb, sheet, "default");
-            addTranslatable(wb, sheet);
-            sheet.createFreezePane(1, 1);
-            wb.write(outFile);
-            outFile.close();
-            if (this.fileKeys.get(fileName) == null) {
-                this.fileKeys.put(fileName, keys);
-            }
-        }
-        for (String fileName : sAllowedFiles) {
-            Map<String, Integer> keys = this.fileKeys.get(fileName);
-            File stringFile = new File(valueDir, fileName);
-            if (!stringFile.exists()) {
-                continue;
-            }
-            keys.putAll(exportDefLangToExcel(1, project, stringFile, getStrings(stringFile), outExcelFile));
+    /**
+     * Counts the pooled strings of a finished export and writes the metrics, as the watch mode never finishes.
+     */
+    private void finishBatch() throws IOException {
+        mStrings.count(mMetrics);
+        mStrings = new StringPool();
+        if (mConfig.metricsFile != null) {
+            mMetrics.writeJson(new File(mConfig.metricsFile));
         }
     }
 
-    private NodeList getStrings(File f) throws SAXException, IOException {
-        Document dom = builder.parse(f);
-        return dom.getDocumentElement().getChildNodes();
+    private void exportWorkbook(File defDir, List<File> langDirs) throws IOException {
+        mWriter = createWriter();
+        if (mConfig.threads > 1) {
+            mPool = new ForkJoinPool(mConfig.threads);
+        }
+        try {
+            exportResDir(null, defDir, langDirs);
+            writeWorkbook();
+        } finally {
+            finishWorkbook();
+        }
     }
 
-    private static HSSFCellStyle createTilteStyle(HSSFWorkbook wb) {
-        HSSFFont bold = wb.createFont();
-        bold.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
-
-        HSSFCellStyle style = wb.createCellStyle();
-        style.setFont(bold);
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setWrapText(true);
+    /**
+     * Exports resource directories of all the modules, flavors and source sets found in the project into a single
+     * workbook, with a sheet per module and resource file.
+     */
+    private void exportModules(File project) throws IOException {
+        long start = System.nanoTime();
+        List<File> resDirs = ResourceDirFinder.find(project, mConfig.threads);
+        mMetrics.addPhase(Metrics.PHASE_DISCOVERY, System.nanoTime() - start);
+        if (resDirs.isEmpty()) {
+            System.err.println("Cannot find any resource directory.");
+            return;
+        }
+        if (mConfig.incremental) {
+            out.println("Incremental export is not supported for all modules, exporting everything");
+        }
 
-        return style;
+        mWriter = createWriter();
+        if (mConfig.threads > 1) {
+            mPool = new ForkJoinPool(mConfig.threads);
+        }
+        try {
+            for (File res : resDirs) {
+                List<File> langDirs = new ArrayList<File>();
+                File defDir = listValuesDirs(res, langDirs);
+                String module = ResourceDirFinder.getModuleName(project, res);
+                out.println();
+                out.println("Exporting module: " + module);
+                exportResDir(module, defDir, langDirs);
+            }
+            writeWorkbook();
+        } finally {
+            finishWorkbook();
+        }
     }
 
-    private static HSSFCellStyle createCommentStyle(HSSFWorkbook wb) {
-
-        HSSFFont commentFont = wb.createFont();
-        commentFont.setColor(HSSFColor.GREEN.index);
-        commentFont.setItalic(true);
-        commentFont.setFontHeightInPoints((short)12);
+    /**
+     * Exports the translations of a snapshot written by a previous export, without reading any resource file.
+     */
+    private void exportSnapshot(File snapshotFile) throws IOException {
+        long start = System.nanoTime();
+        TranslationSnapshot snapshot = TranslationSnapshot.open(snapshotFile);
+        mMetrics.addPhase(Metrics.PHASE_SNAPSHOT, System.nanoTime() - start);
+        mMetrics.count(Metrics.BYTES_READ, snapshotFile.length());
+        if (mConfig.incremental) {
+            out.println("Incremental export is not supported from a snapshot, exporting everything");
+        }
 
-        HSSFCellStyle commentStyle = wb.createCellStyle();
-        commentStyle.setFont(commentFont);
-        return commentStyle;
+        mWriter = createWriter();
+        try {
+            for (int i = 0; i < snapshot.getSheetCount(); i++) {
+                exportSnapshotSheet(snapshot.getSheet(i));
+            }
+            writeWorkbook();
+        } finally {
+            finishWorkbook();
+        }
     }
 
-    private static HSSFCellStyle createSectionCommentStyle(HSSFWorkbook wb) {
-
-        HSSFFont commentFont = wb.createFont();
-        commentFont.setColor(HSSFColor.GREEN.index);
-        commentFont.setItalic(true);
-        commentFont.setFontHeightInPoints((short)12);
-
-        HSSFCellStyle commentStyle = wb.createCellStyle();
-        commentStyle.setFillForegroundColor(HSSFColor.GREEN.LIGHT_GREEN.index);
-        commentStyle.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        commentStyle.setFont(commentFont);
-        return commentStyle;
+    private void exportSnapshotSheet(TranslationSnapshot.Sheet sheet) throws IOException {
+        long start = System.nanoTime();
+        TranslationTable table = sheet.toTable();
+        mWriter.startSheet(sheet.getName(), sheet.getLocales());
+        if (sheet.getRowCount() > 0) {
+            out.println();
+            out.println("Start processing DEFAULT language " + sheet.getName());
+        }
+        for (int row = 0; row < sheet.getRowCount(); row++) {
+            int kind = sheet.getRowKind(row);
+            if (kind == TranslationSnapshot.ROW_KEY) {
+                int id = sheet.getRowId(row);
+                String value = sheet.getValue(TranslationSnapshot.DEFAULT, id);
+                mWriter.addRow(table.getKey(id), value, value.startsWith("@string/"),
+                    table.hasFlag(TranslationTable.FLAG_UNTRANSLATABLE, id), table, id);
+            } else if (kind == TranslationSnapshot.ROW_PLURALS) {
+                mWriter.addPlurals(sheet.getRowText(row));
+            } else {
+                mWriter.addComment(sheet.getRowText(row), kind == TranslationSnapshot.ROW_SECTION_COMMENT);
+            }
+        }
+        mWriter.endSheet(table);
+        if (sheet.getRowCount() > 0) {
+            out.println("DEFAULT language was precessed");
+            int plurals = 0;
+            int arrays = 0;
+            for (int i = 0; i < table.getRowCount(); i++) {
+                int id = table.getRowId(i);
+                if (table.hasFlag(TranslationTable.FLAG_PLURAL, id)) {
+                    plurals++;
+                } else if (table.hasFlag(TranslationTable.FLAG_ARRAY, id)) {
+                    arrays++;
+                }
+            }
+            countValues("default", table.getRowCount() - plurals - arrays, plurals, arrays);
+        }
+        mMetrics.addPhase(Metrics.PHASE_SHEET_BUILD, System.nanoTime() - start);
+
+        for (int locale = 0; locale < table.getLocaleCount(); locale++) {
+            int keys = 0;
+            int plurals = 0;
+            int arrays = 0;
+            for (int id = 0; id < table.size(); id++) {
+                if (table.getValue(locale, id) == null) {
+                    continue;
+                }
+                if (table.hasFlag(TranslationTable.FLAG_PLURAL, id)) {
+                    plurals++;
+                } else if (table.hasFlag(TranslationTable.FLAG_ARRAY, id)) {
+                    arrays++;
+                } else {
+                    keys++;
+                }
+            }
+            countValues(table.getLocale(locale), keys, plurals, arrays);
+            reportLang(sheet.getName(), table, locale);
+        }
     }
 
-    private static HSSFCellStyle createUntranslatableStyle(HSSFWorkbook wb) {
-        HSSFCellStyle textStyle = wb.createCellStyle();
-        textStyle.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        textStyle.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        textStyle.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        HSSFFont font = wb.createFont();
-        font.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
-        textStyle.setFont(font);
-        return textStyle;
+    /**
+     * Lists the values directories of a resource directory. Language directories are sorted by their names.
+     *
+     * @param res resource directory or null for the directories of the exported resource tree
+     * @return the default values directory or null if there is none
+     */
+    private File listValuesDirs(File res, List<File> langDirs) {
+        File[] dirs;
+        if (res == null) {
+            List<String> names = mTree.getDirs();
+            dirs = new File[names.size()];
+            for (int i = 0; i < dirs.length; i++) {
+                dirs[i] = new File(names.get(i));
+            }
+        } else {
+            dirs = res.listFiles();
+        }
+        File defDir = null;
+        for (File dir : dirs) {
+            if ((res != null && !dir.isDirectory()) || !dir.getName().startsWith(DIR_VALUES)) {
+                continue;
+            }
+            String dirName = dir.getName();
+            if (dirName.equals(DIR_VALUES)) {
+                defDir = dir;
+            } else if (dirName.indexOf('-') != -1) {
+                langDirs.add(dir);
+            }
+        }
+        // language columns are always added in the same order, regardless of file system listing order
+        Collections.sort(langDirs);
+        return defDir;
     }
 
-    private static HSSFCellStyle createStringReferenceStyle(HSSFWorkbook wb) {
-        HSSFCellStyle textStyle = wb.createCellStyle();
-        HSSFFont font = wb.createFont();
-        font.setItalic(true);
-        font.setFontHeightInPoints((short)12);
-        font.setColor(HSSFColor.GREY_40_PERCENT.index);
-        textStyle.setFont(font);
-        return textStyle;
+    /**
+     * Exports all the allowed resource files of a resource directory into their own sheets.
+     *
+     * @param module name of the module prefixing the sheet names or null for a single module
+     */
+    private void exportResDir(String module, File defDir, List<File> langDirs) throws IOException {
+        if (mPool != null) {
+            for (File dir : langDirs) {
+                parseAsync(mPool, dir);
+            }
+        }
+        for (String fileName : sAllowedFiles) {
+            exportFile(getSheetName(module, fileName), fileName, defDir, langDirs);
+        }
     }
 
-    private static HSSFCellStyle createPlurarStyle(HSSFWorkbook wb) {
+    private String getSheetName(String module, String fileName) {
+        if (module == null) {
+            return fileName;
+        }
+        String name = module.replace('/', '-') + " " + fileName;
+        if (name.length() > MAX_SHEET_NAME_LENGTH) {
+            // keep the file name and the most specific part of the module name
+            name = name.substring(name.length() - MAX_SHEET_NAME_LENGTH);
+        }
+        name = SheetWriter.createSafeSheetName(name);
+        String unique = name;
+        for (int i = 2; mWriter.hasSheet(unique); i++) {
+            String suffix = "~" + i;
+            unique = name.substring(0, Math.min(name.length(), MAX_SHEET_NAME_LENGTH - suffix.length())) + suffix;
+        }
+        return unique;
+    }
 
-        HSSFFont commentFont = wb.createFont();
-        commentFont.setColor(HSSFColor.GREY_50_PERCENT.index);
-        commentFont.setItalic(true);
-        commentFont.setFontHeightInPoints((short)12);
+    private void finishWorkbook() throws IOException {
+        if (mPool != null) {
+            mPool.shutdownNow();
+            mPool = null;
+        }
+        mWriter.close();
+    }
 
-        HSSFCellStyle commentStyle = wb.createCellStyle();
-        commentStyle.setFont(commentFont);
-        return commentStyle;
+    private List<File> getExportedFiles(File defDir, List<File> langDirs) {
+        List<File> files = new ArrayList<File>();
+        for (String fileName : sAllowedFiles) {
+            File stringFile = new File(defDir, fileName);
+            if (stringFile.exists()) {
+                files.add(stringFile);
+            }
+            for (File dir : langDirs) {
+                stringFile = new File(dir, fileName);
+                if (stringFile.exists()) {
+                    files.add(stringFile);
+                }
+            }
+        }
+        return files;
     }
 
-    private static HSSFCellStyle createKeyStyle(HSSFWorkbook wb) {
-        HSSFFont bold = wb.createFont();
-        bold.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
-        bold.setFontHeightInPoints((short)11);
+    /**
+     * Updates the previously exported workbook in place. Only the resource files changed since the last export
+     * are parsed and only the cells of their language columns whose values differ are rewritten.
+     *
+     * @return false if the workbook cannot be updated and has to be exported completely
+     */
+    private boolean exportIncremental(File defDir, List<File> langDirs, ExportIndex index) throws IOException {
+        if (!outExcelFile.getName().endsWith(EXCEL_EXTENSION)) {
+            out.println("Incremental export is supported only for " + EXCEL_EXTENSION + ", exporting everything");
+            return false;
+        }
+        ExportIndex previous = ExportIndex.load(outExcelFile);
+        if (previous == null || !previous.isWorkbook(outExcelFile)) {
+            out.println("No previous export found, exporting everything");
+            return false;
+        }
+        if (!index.hasSameFiles(previous)) {
+            out.println("Exported files or languages changed, exporting everything");
+            return false;
+        }
+        for (String fileName : sAllowedFiles) {
+            File stringFile = new File(defDir, fileName);
+            if (stringFile.exists() && index.isChanged(previous, stringFile)) {
+                out.println("Default language changed, exporting everything");
+                return false;
+            }
+        }
 
-        HSSFCellStyle keyStyle = wb.createCellStyle();
-        keyStyle.setFont(bold);
+        List<File> changedFiles = new ArrayList<File>();
+        for (File f : getExportedFiles(defDir, langDirs)) {
+            if (index.isChanged(previous, f)) {
+                changedFiles.add(f);
+            }
+        }
+        if (changedFiles.isEmpty()) {
+            out.println("Nothing changed since the last export");
+            return true;
+        }
 
-        return keyStyle;
+        long start = System.nanoTime();
+        PoiSheetWriter writer = PoiSheetWriter.openXls(outExcelFile);
+        mWriter = writer;
+        mMetrics.addPhase(Metrics.PHASE_WORKBOOK_READ, System.nanoTime() - start);
+        mMetrics.count(Metrics.BYTES_READ, outExcelFile.length());
+        for (File stringFile : changedFiles) {
+            String dirName = stringFile.getParentFile().getName();
+            String lang = dirName.substring(dirName.indexOf('-') + 1);
+            TranslationTable values = readLangValues(stringFile);
+            start = System.nanoTime();
+            TranslationTable table = new TranslationTable(Collections.singletonList(lang));
+            table.putAll(0, values);
+            int updated = writer.updateLangColumn(stringFile.getName(), table);
+            mMetrics.addPhase(Metrics.PHASE_SHEET_BUILD, System.nanoTime() - start);
+            if (updated < 0) {
+                out.println("Workbook does not match the previous export, exporting everything");
+                return false;
+            }
+            out.println();
+            out.println(String.format("Updating: '%s'", lang) + " " + stringFile.getName());
+            out.println(String.format("'%s' updated cells - %d", lang, updated));
+            reportLang(stringFile.getName(), table, 0);
+        }
+        writeWorkbook();
+        return true;
     }
 
-    private static HSSFCellStyle createTextStyle(HSSFWorkbook wb) {
-        HSSFFont plain = wb.createFont();
-        plain.setFontHeightInPoints((short)12);
+    private SheetWriter createWriter() {
+        SheetWriter writer;
+        String name = outExcelFile.getName();
+        if (name.endsWith(CSV_EXTENSION) || name.endsWith(TSV_EXTENSION)) {
+            writer = new CsvSheetWriter(outExcelFile, mOutput, name.endsWith(TSV_EXTENSION) ? '\t' : ',');
+        } else if (name.endsWith(EXCEL_XML_EXTENSION)) {
+            // the streaming workbook keeps the rows in temporary files, unless exporting in memory
+            writer = PoiSheetWriter.createXlsx(outExcelFile, mOutput, mTree == null);
+        } else {
+            writer = PoiSheetWriter.createXls(outExcelFile, mOutput);
+        }
+        if (mConfig.snapshotFile != null) {
+            mSnapshot = new SnapshotSheetWriter(writer, new File(mConfig.snapshotFile));
+            return mSnapshot;
+        }
+        return writer;
+    }
 
-        HSSFCellStyle textStyle = wb.createCellStyle();
-        textStyle.setFont(plain);
+    /**
+     * Starts parsing of all the exported resource files of the given values directory on the pool.
+     * Results are picked up later by {@link #getLangValues(File)}.
+     */
+    private void parseAsync(ForkJoinPool pool, File valueDir) {
+        for (String fileName : sAllowedFiles) {
+            final File stringFile = new File(valueDir, fileName);
+            if (!exists(stringFile)) {
+                continue;
+            }
+            mParsedFiles.put(stringFile, pool.submit(new Callable<TranslationTable>() {
+                @Override
+                public TranslationTable call() throws Exception {
+                    return readLangValues(stringFile);
+                }
+            }));
+        }
+    }
 
-        return textStyle;
+    private void writeWorkbook() throws IOException {
+        long start = System.nanoTime();
+        long bytes = mWriter.write();
+        mMetrics.addPhase(Metrics.PHASE_WORKBOOK_WRITE, System.nanoTime() - start);
+        if (mOutput == null) {
+            mMetrics.count(Metrics.BYTES_WRITTEN, bytes);
+        }
+        if (mSnapshot != null) {
+            start = System.nanoTime();
+            mMetrics.count(Metrics.BYTES_WRITTEN, mSnapshot.writeSnapshot());
+            mMetrics.addPhase(Metrics.PHASE_SNAPSHOT, System.nanoTime() - start);
+        }
     }
 
-    private static HSSFCellStyle createMissedStyle(HSSFWorkbook wb) {
+    private File findResourceDir(File project) {
+        List<File> availableResDirs = new LinkedList<File>();
+        for (String potentialResDir : POTENTIAL_RES_DIRS) {
+            File res = new File(project, potentialResDir);
+            if (res.exists()) {
+                availableResDirs.add(res);
+            }
+        }
+        if (!availableResDirs.isEmpty()) {
+            return availableResDirs.get(0);
+        }
+        return null;
+    }
 
-        HSSFCellStyle style = wb.createCellStyle();
-        style.setFillForegroundColor(HSSFColor.RED.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+    /**
+     * Exports a single resource file into its own sheet.
+     * <p>
+     * Translations of all the languages are read first, so that every row of the sheet is written only once and
+     * in order, including all its language columns. That is what allows the .xlsx workbook to keep only a window
+     * of rows in memory.
+     */
+    private void exportFile(String sheetName, String fileName, File defDir, List<File> langDirs)
+        throws IOException {
+        List<String> langs = new ArrayList<String>();
+        List<File> langFiles = new ArrayList<File>();
+        for (File dir : langDirs) {
+            File stringFile = new File(dir, fileName);
+            if (!exists(stringFile)) {
+                continue;
+            }
+            String dirName = dir.getName();
+            langs.add(dirName.substring(dirName.indexOf('-') + 1));
+            langFiles.add(stringFile);
+        }
+        TranslationTable table = new TranslationTable(langs);
+        for (int i = 0; i < langFiles.size(); i++) {
+            table.putAll(i, getLangValues(langFiles.get(i)));
+        }
 
-        return style;
+        long start = System.nanoTime();
+        mWriter.startSheet(sheetName, langs);
+
+        File stringFile = new File(defDir, fileName);
+        if (exists(stringFile)) {
+            long defStart = System.nanoTime();
+            exportDefLangToExcel(1, project, stringFile, table);
+            mMetrics.addLocaleTime("default", System.nanoTime() - defStart);
+            int plurals = 0;
+            int arrays = 0;
+            for (int i = 0; i < table.getRowCount(); i++) {
+                int id = table.getRowId(i);
+                if (table.hasFlag(TranslationTable.FLAG_PLURAL, id)) {
+                    plurals++;
+                } else if (table.hasFlag(TranslationTable.FLAG_ARRAY, id)) {
+                    arrays++;
+                }
+            }
+            countValues("default", stringFile, table.getRowCount() - plurals - arrays, plurals, arrays);
+        }
+        mWriter.endSheet(table);
+        mMetrics.addPhase(Metrics.PHASE_SHEET_BUILD, System.nanoTime() - start);
+        for (int i = 0; i < langs.size(); i++) {
+            reportLang(fileName, table, i);
+        }
     }
 
-    private static void createTilte(HSSFWorkbook wb, HSSFSheet sheet) {
-        HSSFRow titleRow = sheet.getRow(0);
+    private TranslationTable getLangValues(File f) throws IOException {
+        ForkJoinTask<TranslationTable> parsed = mParsedFiles.remove(f);
+        if (parsed == null) {
+            return readLangValues(f);
+        }
+        try {
+            return parsed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing " + f, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            throw new IOException("Cannot parse " + f, cause);
+        }
+    }
 
-        HSSFCell cell = titleRow.createCell(0);
-        cell.setCellStyle(createTilteStyle(wb));
-        cell.setCellValue("KEY");
+    /**
+     * Reads translated values of a language resource file.
+     *
+     * @return table of the language with the keys in the order of the file
+     */
+    private TranslationTable readLangValues(File f) throws IOException {
+        String dirName = getDirName(f);
+        String lang = dirName.substring(dirName.indexOf('-') + 1);
+        long start = System.nanoTime();
+        TranslationTable values = parseLangValues(f, lang);
+        long time = System.nanoTime() - start;
+        mMetrics.addPhase(Metrics.PHASE_PARSE, time);
+        mMetrics.addLocaleTime(lang, time);
+        int plurals = values.countFlag(TranslationTable.FLAG_PLURAL);
+        int arrays = values.countFlag(TranslationTable.FLAG_ARRAY);
+        countValues(lang, f, values.size() - plurals - arrays, plurals, arrays);
+        return values;
+    }
 
-        sheet.setColumnWidth(cell.getColumnIndex(), (40 * 256));
+    /**
+     * Counts keys, plural and array items of a parsed resource file of the language.
+     */
+    private void countValues(String lang, File f, int keys, int plurals, int arrays) {
+        countValues(lang, keys, plurals, arrays);
+        mMetrics.count(lang, Metrics.BYTES_READ, mTree != null ? mTree.get(getDirName(f), f.getName()).length
+            : f.length());
     }
 
-    private static void addTranslatable(HSSFWorkbook wb, HSSFSheet sheet) {
-        HSSFRow titleRow = sheet.getRow(0);
+    private void countValues(String lang, int keys, int plurals, int arrays) {
+        mMetrics.count(lang, Metrics.KEYS, keys);
+        mMetrics.count(lang, Metrics.PLURALS, plurals);
+        mMetrics.count(lang, Metrics.ARRAYS, arrays);
+    }
 
-        HSSFCell cell = titleRow.createCell(2);
-        cell.setCellStyle(createTilteStyle(wb));
-        cell.setCellValue("Untranslatable");
+    private boolean exists(File f) {
+        return mTree != null ? mTree.contains(getDirName(f), f.getName()) : f.exists();
+    }
 
-        sheet.setColumnWidth(cell.getColumnIndex(), (18 * 256));
+    private static String getDirName(File f) {
+        return f.getParentFile().getName();
     }
 
-    private static void addLang2Tilte(HSSFWorkbook wb, HSSFSheet sheet, String lang) {
-        HSSFRow titleRow = sheet.getRow(0);
-        HSSFCell lastCell = titleRow.getCell((int)titleRow.getLastCellNum() - 1);
-        if (lang.equals(lastCell.getStringCellValue())) {
-            // language column already exists
+    /**
+     * Reads a resource file from the disk or from the exported resource tree.
+     */
+    private void readStrings(File f, StringsReader.Handler handler) throws IOException {
+        if (mTree == null) {
+            StringsReader.read(f, handler);
             return;
         }
-        HSSFCell cell = titleRow.createCell((int)titleRow.getLastCellNum());
-        cell.setCellStyle(createTilteStyle(wb));
-        cell.setCellValue(lang);
-
-        sheet.setColumnWidth(cell.getColumnIndex(), (60 * 256));
+        try {
+            StringsReader.read(new ByteArrayInputStream(mTree.get(getDirName(f), f.getName())), handler);
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot parse " + f, e);
+        }
     }
 
+    private TranslationTable parseLangValues(File f, String lang) throws IOException {
+        final TranslationTable values = new TranslationTable(Collections.singletonList(lang));
+        readStrings(f, new StringsReader.Handler() {
+            @Override
+            public void onComment(String comment) {
+            }
 
-    private Map<String, Integer> exportDefLangToExcel(int rowIndex, String project, File src, NodeList strings, File f) throws FileNotFoundException, IOException {
-        out.println();
-        out.println("Start processing DEFAULT language " + src.getName());
+            @Override
+            public void onString(String key, String value, boolean translatable) {
+                if (translatable) {
+                    values.setValue(0, values.intern(key), mStrings.intern(value));
+                }
+            }
 
-        Map<String, Integer> keys = new HashMap<String, Integer>();
+            @Override
+            public void onPlurals(String key) {
+            }
 
-        HSSFWorkbook wb = new HSSFWorkbook(new FileInputStream(f));
+            @Override
+            public void onPluralsItem(String key, String quantity, String value) {
+                int id = values.intern(key + "#" + quantity);
+                values.setValue(0, id, mStrings.intern(value));
+                values.setFlag(TranslationTable.FLAG_PLURAL, id, true);
+            }
 
-        HSSFCellStyle sectionCommentStyle = createSectionCommentStyle(wb);
-        HSSFCellStyle commentStyle = createCommentStyle(wb);
-        HSSFCellStyle plurarStyle = createPlurarStyle(wb);
-        HSSFCellStyle keyStyle = createKeyStyle(wb);
-        HSSFCellStyle textStyle = createTextStyle(wb);
-        HSSFCellStyle untranslatableStyle = createUntranslatableStyle(wb);
-        HSSFCellStyle stringReferenceStyle = createStringReferenceStyle(wb);
+            @Override
+            public void onArrayItem(String key, int index, String value) {
+                int id = values.intern(key + "[" + index + "]");
+                values.setValue(0, id, mStrings.intern(value));
+                values.setFlag(TranslationTable.FLAG_ARRAY, id, true);
+            }
+        });
+        return values;
+    }
 
-        HSSFSheet sheet = wb.getSheet(src.getName());
+    /**
+     * Writes the rows of the default language with the translations of all the languages from the table. Keys of
+     * the rows get their rows and flags in the table.
+     */
+    private void exportDefLangToExcel(int rowIndex, String project, File src, final TranslationTable table)
+        throws IOException {
+        out.println();
+        out.println("Start processing DEFAULT language " + src.getName());
 
+        final int firstRowIndex = rowIndex;
 
-        for (int i = 0; i < strings.getLength(); i++) {
-            Node item = strings.item(i);
-            if (item.getNodeType() == Node.TEXT_NODE) {
+        readStrings(src, new StringsReader.Handler() {
 
-            }
-            if (item.getNodeType() == Node.COMMENT_NODE) {
-                String content = item.getTextContent();
+            int rowIndex = firstRowIndex;
+
+            @Override
+            public void onComment(String content) throws IOException {
                 boolean sectionTitle = content.startsWith("$");
                 content = content.replace("$", "");
-                HSSFRow row = sheet.createRow(rowIndex++);
-                HSSFCell cell = row.createCell(0);
-                cell.setCellValue(String.format("/** %s **/", content));
-                cell.setCellStyle(sectionTitle? sectionCommentStyle: commentStyle);
-                sheet.addMergedRegion(new CellRangeAddress(row.getRowNum(), row.getRowNum(), 0, 255));
-            }
-
-            if ("string".equals(item.getNodeName())) {
-                Node translatableNode = item.getAttributes().getNamedItem("translatable");
-                boolean untranslatable = translatableNode != null && "false".equals(translatableNode.getNodeValue());
-                String key = item.getAttributes().getNamedItem("name").getNodeValue();
-                this.untranslatableMap.put(key, untranslatable);
+                mWriter.addComment(content, sectionTitle);
+                rowIndex++;
+            }
+
+            @Override
+            public void onString(String key, String value, boolean translatable) throws IOException {
+                boolean untranslatable = !translatable;
                 if (mConfig.isIgnoredKey(key)) {
-                    continue;
+                    return;
                 }
-                keys.put(key, rowIndex);
-
-                HSSFRow row = sheet.createRow(rowIndex++);
-
-                HSSFCell cell = row.createCell(0);
-                cell.setCellValue(key);
-                cell.setCellStyle(keyStyle);
+                int id = table.intern(key);
+                table.setFlag(TranslationTable.FLAG_UNTRANSLATABLE, id, untranslatable);
+                table.setRow(id, rowIndex++);
 
-                cell = row.createCell(1);
-                boolean referenced = item.getTextContent().startsWith("@string/");
-                cell.setCellStyle(referenced? stringReferenceStyle: textStyle);
-                cell.setCellValue(item.getTextContent());
+                boolean referenced = value.startsWith("@string/");
+                mWriter.addRow(key, value, referenced, untranslatable, table, id);
+            }
 
-                cell = row.createCell(2);
-                cell.setCellStyle(untranslatable? untranslatableStyle: textStyle);
-                cell.setCellValue(untranslatable? "✓": "");
-            } else if ("plurals".equals(item.getNodeName())) {
-                String key = item.getAttributes().getNamedItem("name").getNodeValue();
+            @Override
+            public void onPlurals(String key) throws IOException {
                 if (mConfig.isIgnoredKey(key)) {
-                    continue;
+                    return;
                 }
-                String plurarName = key;
-
-                HSSFRow row = sheet.createRow(rowIndex++);
-                HSSFCell cell = row.createCell(0);
-                cell.setCellValue(String.format("//plurals: %s", plurarName));
-                cell.setCellStyle(plurarStyle);
-
-                NodeList items = item.getChildNodes();
-                for (int j = 0; j < items.getLength(); j++) {
-                    Node plurarItem = items.item(j);
-                    if ("item".equals(plurarItem.getNodeName())) {
-                        String itemKey = plurarName + "#" + plurarItem.getAttributes().getNamedItem("quantity").getNodeValue();
-                        boolean untranslatable = plurarItem.getTextContent().startsWith("@string/");
-                        this.untranslatableMap.put(itemKey, untranslatable);
-
-                        keys.put(itemKey, rowIndex);
-
-                        HSSFRow itemRow = sheet.createRow(rowIndex++);
-
-                        HSSFCell itemCell = itemRow.createCell(0);
-                        itemCell.setCellValue(itemKey);
-                        itemCell.setCellStyle(keyStyle);
-
-                        itemCell = itemRow.createCell(1);
-                        itemCell.setCellStyle(untranslatable? stringReferenceStyle: textStyle);
-                        itemCell.setCellValue(plurarItem.getTextContent());
+                mWriter.addPlurals(key);
+                rowIndex++;
+            }
 
-                        itemCell = itemRow.createCell(2);
-                        itemCell.setCellStyle(untranslatable? untranslatableStyle: textStyle);
-                        itemCell.setCellValue(untranslatable? "✓": "");
-                    }
-                }
-            } else if ("string-array".equals(item.getNodeName())) {
-                String key = item.getAttributes().getNamedItem("name").getNodeValue();
+            @Override
+            public void onPluralsItem(String key, String quantity, String value) throws IOException {
                 if (mConfig.isIgnoredKey(key)) {
-                    continue;
+                    return;
                 }
-                NodeList arrayItems = item.getChildNodes();
-                for (int j = 0, k = 0; j < arrayItems.getLength(); j++) {
-                    Node arrayItem = arrayItems.item(j);
-                    if ("item".equals(arrayItem.getNodeName())) {
-                        String itemKey = key + "[" + k++ + "]";
-                        boolean untranslatable = arrayItem.getTextContent().startsWith("@string/");
-                        this.untranslatableMap.put(itemKey, untranslatable);
-                        keys.put(itemKey, rowIndex);
-
-                        HSSFRow itemRow = sheet.createRow(rowIndex++);
-
-                        HSSFCell itemCell = itemRow.createCell(0);
-                        itemCell.setCellValue(itemKey);
-                        itemCell.setCellStyle(keyStyle);
-
-                        itemCell = itemRow.createCell(1);
-                        itemCell.setCellStyle(untranslatable? stringReferenceStyle: textStyle);
-                        itemCell.setCellValue(arrayItem.getTextContent());
-
-                        itemCell = itemRow.createCell(2);
-                        itemCell.setCellStyle(untranslatable? untranslatableStyle: textStyle);
-                        itemCell.setCellValue(untranslatable? "✓": "");
-                    }
+                int id = addItemRow(key + "#" + quantity, value);
+                table.setFlag(TranslationTable.FLAG_PLURAL, id, true);
+            }
+
+            @Override
+            public void onArrayItem(String key, int index, String value) throws IOException {
+                if (mConfig.isIgnoredKey(key)) {
+                    return;
                 }
+                int id = addItemRow(key + "[" + index + "]", value);
+                table.setFlag(TranslationTable.FLAG_ARRAY, id, true);
             }
-        }
 
-        FileOutputStream outFile = new FileOutputStream(f);
-        wb.write(outFile);
-        outFile.close();
+            /**
+             * @return id of the item key
+             */
+            private int addItemRow(String itemKey, String value) throws IOException {
+                boolean untranslatable = value.startsWith("@string/");
+                int id = table.intern(itemKey);
+                table.setFlag(TranslationTable.FLAG_UNTRANSLATABLE, id, untranslatable);
+                table.setRow(id, rowIndex++);
+
+                mWriter.addRow(itemKey, value, untranslatable, untranslatable, table, id);
+                return id;
+            }
+        });
 
         out.println("DEFAULT language was precessed");
-        return keys;
     }
 
-    private void exportLangToExcel(String project, String lang, File src, NodeList strings, File f, Map<String, Integer> keysIndex) throws FileNotFoundException, IOException {
+    /**
+     * Reports translations of a locale of the table without a row and rows without a translation.
+     */
+    private void reportLang(String fileName, TranslationTable table, int locale) {
+        String lang = table.getLocale(locale);
         out.println();
-        out.println(String.format("Start processing: '%s'", lang) + " " + src.getName());
-        Set<String> missedKeys = new HashSet<String>(keysIndex.keySet());
-
-        HSSFWorkbook wb = new HSSFWorkbook(new FileInputStream(f));
-
-        HSSFCellStyle textStyle = createTextStyle(wb);
-
-        HSSFSheet sheet = wb.getSheet(src.getName());
-        addLang2Tilte(wb, sheet, lang);
-
-        HSSFRow titleRow = sheet.getRow(0);
-        int lastColumnIdx = (int)titleRow.getLastCellNum() - 1;
-
-        for (int i = 0; i < strings.getLength(); i++) {
-            Node item = strings.item(i);
-
-            if ("string".equals(item.getNodeName())) {
-                Node translatable = item.getAttributes().getNamedItem("translatable");
-                if (translatable != null && "false".equals(translatable.getNodeValue())) {
-                    continue;
-                }
-                String key = item.getAttributes().getNamedItem("name").getNodeValue();
-                Integer index = keysIndex.get(key);
-                if (index == null) {
-                    out.println("\t" + key + " - row does not exist");
-                    continue;
-                }
-
-                missedKeys.remove(key);
-                HSSFRow row = sheet.getRow(index);
-
-                HSSFCell cell = row.createCell(lastColumnIdx);
-                cell.setCellValue(item.getTextContent());
-                cell.setCellStyle(textStyle);
-            } else if ("plurals".equals(item.getNodeName())) {
-                String key = item.getAttributes().getNamedItem("name").getNodeValue();
-                String plurarName = key;
-
-                NodeList items = item.getChildNodes();
-                for (int j = 0; j < items.getLength(); j++) {
-                    Node plurarItem = items.item(j);
-                    if ("item".equals(plurarItem.getNodeName())) {
-                        key = plurarName + "#" + plurarItem.getAttributes().getNamedItem("quantity").getNodeValue();
-                        Integer index = keysIndex.get(key);
-                        if (index == null) {
-                            out.println("\t" + key + " - row does not exist");
-                            continue;
-                        }
-                        missedKeys.remove(key);
-
-                        HSSFRow row = sheet.getRow(index);
-
-                        HSSFCell cell = row.createCell(lastColumnIdx);
-                        cell.setCellValue(plurarItem.getTextContent());
-                        cell.setCellStyle(textStyle);
-                    }
-                }
-            } else if ("string-array".equals(item.getNodeName())) {
-                String key = item.getAttributes().getNamedItem("name").getNodeValue();
-                NodeList arrayItems = item.getChildNodes();
-                for (int j = 0, k = 0; j < arrayItems.getLength(); j++) {
-                    Node arrayItem = arrayItems.item(j);
-                    if ("item".equals(arrayItem.getNodeName())) {
-                        String itemKey = key + "[" + k++ + "]";
-                        Integer rowIndex = keysIndex.get(itemKey);
-                        if (rowIndex == null) {
-                            out.println("\t" + key + " - row does not exist");
-                            continue;
-                        }
-                        missedKeys.remove(key);
-
-                        HSSFRow itemRow = sheet.getRow(rowIndex);
-
-                        HSSFCell cell = itemRow.createCell(lastColumnIdx);
-                        cell.setCellValue(arrayItem.getTextContent());
-                        cell.setCellStyle(textStyle);
-                    }
-                }
+        out.println(String.format("Start processing: '%s'", lang) + " " + fileName);
+        for (int id = 0; id < table.size(); id++) {
+            if (table.getRow(id) == 0 && table.getValue(locale, id) != null) {
+                out.println("\t" + table.getKey(id) + " - row does not exist");
             }
         }
 
-        HSSFCellStyle missedStyle = createMissedStyle(wb);
-        HSSFCellStyle untranstableStyle = createUntranslatableStyle(wb);
-        if (!missedKeys.isEmpty()) {
+        int missedKeys = 0;
+        for (int i = 0; i < table.getRowCount(); i++) {
+            if (table.getValue(locale, table.getRowId(i)) == null) {
+                missedKeys++;
+            }
+        }
+        mMetrics.count(lang, Metrics.MISSING_KEYS, missedKeys);
+        if (missedKeys > 0) {
             out.println("  MISSED KEYS:");
         }
-        for (String missedKey : missedKeys) {
-            //out.println("\t" + missedKey);
-            Integer index = keysIndex.get(missedKey);
-            HSSFRow row = sheet.getRow(index);
-            HSSFCell cell = row.createCell((int)row.getLastCellNum());
-            cell.setCellStyle(missedStyle);
-            boolean untranslatable = this.untranslatableMap.get(missedKey) != null && this.untranslatableMap.get(missedKey);
-            if (!untranslatable) {
-                out.println("\t" + missedKey);
+        for (int i = 0; i < table.getRowCount(); i++) {
+            int id = table.getRowId(i);
+            if (table.getValue(locale, id) == null && !table.hasFlag(TranslationTable.FLAG_UNTRANSLATABLE, id)) {
+                out.println("\t" + table.getKey(id));
             }
-            cell.setCellStyle(untranslatable? untranstableStyle: missedStyle);
         }
 
-        FileOutputStream outStream = new FileOutputStream(f);
-        wb.write(outStream);
-        outStream.close();
-
-        if (missedKeys.isEmpty()) {
+        if (missedKeys == 0) {
             out.println(String.format("'%s' was processed", lang));
         } else {
-            out.println(String.format("'%s' was processed with MISSED KEYS - %d", lang, missedKeys.size()));
+            out.println(String.format("'%s' was processed with MISSED KEYS - %d", lang, missedKeys));
         }
     }
 }
@@ -0,0 +1,78 @@
+package cz.tomaskypta.tools.langtool.importing;
+
+import java.io.IOException;
+import java.io.StringReader;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parses mixed content values into elements.
+ * <p>
+ * The factory is looked up only once and every thread reuses its own document builder, so parsing a value
+ * costs only the parse itself.
+ */
+class FragmentParser {
+
+    // TODO improve
+    // currently ignoring errors - there were irrelevant messages about '&'
+    private static final ErrorHandler sSilentErrorHandler = new ErrorHandler() {
+        @Override
+        public void warning(SAXParseException exception) throws SAXException {
+
+        }
+
+        @Override
+        public void error(SAXParseException exception) throws SAXException {
+
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception) throws SAXException {
+
+        }
+    };
+
+    private static final DocumentBuilderFactory sFactory = DocumentBuilderFactory.newInstance();
+
+    private static final ThreadLocal<DocumentBuilder> sBuilders = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            try {
+                DocumentBuilder builder;
+                synchronized (sFactory) {
+                    builder = sFactory.newDocumentBuilder();
+                }
+                builder.setErrorHandler(sSilentErrorHandler);
+                return builder;
+            } catch (ParserConfigurationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private FragmentParser() {
+    }
+
+    /**
+     * Parses the value as the content of an element with the given name.
+     *
+     * @return the parsed element or null if the value is not a well-formed xml content
+     */
+    static Element parse(String nodeName, String value) {
+        String xml = "<" + nodeName + ">" + value + "</" + nodeName + ">";
+        try {
+            return sBuilders.get().parse(new InputSource(new StringReader(xml))).getDocumentElement();
+        } catch (SAXException e) {
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
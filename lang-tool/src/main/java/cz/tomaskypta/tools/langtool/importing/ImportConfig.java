@@ -1,40 +1,56 @@
 package cz.tomaskypta.tools.langtool.importing;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import cz.tomaskypta.tools.langtool.CommandlineArguments;
 import cz.tomaskypta.tools.langtool.CommonConfig;
+import cz.tomaskypta.tools.langtool.importing.reading.WorkbookReader;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Row;
 
 /**
  * Created by Tomáš Kypta on 02.10.14.
  */
 public class ImportConfig extends CommonConfig {
 
+    /**
+     * Replacement of the first match of a regular expression in a value. The pattern is compiled only once when
+     * the config is loaded and the matcher is reused by each thread, so nothing is allocated unless the value
+     * matches.
+     */
     static class Transformation {
-        String regex;
-        String transformation;
-        Set<String> languages;
+        final Pattern pattern;
+        final String transformation;
+        /** Sorted allowed languages or null for all the languages. */
+        final String[] languages;
+
+        private final ThreadLocal<Matcher> mMatcher = new ThreadLocal<Matcher>() {
+            @Override
+            protected Matcher initialValue() {
+                return pattern.matcher("");
+            }
+        };
 
         Transformation(String regex, String transformation) {
-            this.regex = regex;
-            this.transformation = transformation;
-            this.languages = null;
+            this(regex, transformation, null);
         }
 
         Transformation(String regex, String transformation, String languagesList) {
-            this.regex = regex;
+            this.pattern = Pattern.compile(regex);
             this.transformation = transformation;
             if (languagesList != null) {
                 String[] tmpLangs = languagesList.split(",");
-                languages = new HashSet<String>(Arrays.asList(tmpLangs));
+                for (int i = 0; i < tmpLangs.length; i++) {
+                    tmpLangs[i] = tmpLangs[i].trim();
+                }
+                Arrays.sort(tmpLangs);
+                languages = tmpLangs;
+            } else {
+                languages = null;
             }
         }
 
@@ -42,10 +58,46 @@ public class ImportConfig extends CommonConfig {
             if (str == null) {
                 return null;
             }
-            if (languages != null && !languages.contains(lang)) {
+            if (languages != null && (lang == null || Arrays.binarySearch(languages, lang) < 0)) {
+                return str;
+            }
+            Matcher matcher = mMatcher.get().reset(str);
+            if (!matcher.find()) {
                 return str;
             }
-            return str.replaceFirst(regex, transformation);
+            // same as String.replaceFirst()
+            StringBuffer sb = new StringBuffer(str.length() + transformation.length());
+            matcher.appendReplacement(sb, transformation);
+            matcher.appendTail(sb);
+            // do not keep the value referenced by the thread
+            matcher.reset("");
+            return sb.toString();
+        }
+
+        /**
+         * Applies all the transformations one after another in their order.
+         */
+        static String applyAll(List<Transformation> transformations, String str, String lang) {
+            for (int i = 0; i < transformations.size(); i++) {
+                str = transformations.get(i).apply(str, lang);
+            }
+            return str;
+        }
+    }
+
+    /**
+     * Transformation defined for all the keys matching a regular expression.
+     */
+    private static class PatternTransformation {
+        final Pattern keyPattern;
+        final Transformation transformation;
+        /** Order of the rule in the transformations config file. */
+        final int order;
+
+        PatternTransformation(Pattern keyPattern, Transformation transformation, int order) {
+            this.keyPattern = keyPattern;
+            this.transformation = transformation;
+            this.order = order;
         }
     }
 
@@ -58,15 +110,23 @@ public class ImportConfig extends CommonConfig {
     private Set<String> escapedSet;
     public boolean unescapeFirst;
     public String extraTransformations;
-    private Map<String, Transformation> transformationsMap;
+    private Map<String, List<Transformation>> transformationsMap;
+    /** Order of each transformation in {@link #transformationsMap} in the transformations config file. */
+    private Map<Transformation, Integer> transformationsOrder;
+    private List<PatternTransformation> patternTransformations;
     public String mixedContent;
     private Set<String> mixedContentSet;
+    public boolean onlyChanged;
+    /** Directory in which the "out" directory with the imported resources is created, the working directory if null. */
+    public String outputDir;
 
 
     public ImportConfig() {
         super();
         this.escapedSet = new HashSet<String>();
-        transformationsMap = new HashMap<String, Transformation>();
+        transformationsMap = new HashMap<String, List<Transformation>>();
+        transformationsOrder = new IdentityHashMap<Transformation, Integer>();
+        patternTransformations = new ArrayList<PatternTransformation>();
         mixedContentSet = new HashSet<String>();
     }
 
@@ -79,10 +139,14 @@ public class ImportConfig extends CommonConfig {
         this.outputFileName = other.outputFileName;
         this.escapedSet = new HashSet<String>(other.escapedSet);
         this.unescapeFirst = other.unescapeFirst;
-        this.transformationsMap = new HashMap<String, Transformation>(other.transformationsMap);
+        this.transformationsMap = new HashMap<String, List<Transformation>>(other.transformationsMap);
+        this.transformationsOrder = new IdentityHashMap<Transformation, Integer>(other.transformationsOrder);
+        this.patternTransformations = new ArrayList<PatternTransformation>(other.patternTransformations);
         this.extraTransformations = other.extraTransformations;
         this.mixedContent = other.mixedContent;
         this.mixedContentSet = new HashSet<String>(other.mixedContentSet);
+        this.onlyChanged = other.onlyChanged;
+        this.outputDir = other.outputDir;
     }
 
     public ImportConfig(CommandlineArguments args) {
@@ -96,6 +160,7 @@ public class ImportConfig extends CommonConfig {
         this.unescapeFirst = args.isUnescapeFirst();
         this.setTransformations(args.getExtraTransformations());
         this.setMixedContent(args.getMixedContent());
+        this.onlyChanged = args.isOnlyChanged();
     }
 
     public Boolean isEscapedKey(String key) {
@@ -110,15 +175,11 @@ public class ImportConfig extends CommonConfig {
         }
 
         try {
-            HSSFWorkbook wbEscaping = new HSSFWorkbook(new FileInputStream(new File(this.escapingConfigFile)));
-            HSSFSheet sheetEscaping = wbEscaping.getSheetAt(0);
-            Iterator<Row> it = sheetEscaping.rowIterator();
-            while (it.hasNext()) {
-                Row row = it.next();
-                if (row == null || row.getCell(0) == null) {
+            for (String[] cells : WorkbookReader.readRows(new File(this.escapingConfigFile))) {
+                if (cells[0] == null) {
                     return;
                 }
-                escapedSet.add(row.getCell(0).getStringCellValue());
+                escapedSet.add(cells[0]);
             }
         } catch (FileNotFoundException e) {
 
@@ -127,30 +188,75 @@ public class ImportConfig extends CommonConfig {
         }
     }
 
-    public Transformation getKeyTransformation(String key) {
-        return transformationsMap.get(key);
+    /**
+     * @return transformations of the key in the order of the transformations config file or null if there are none
+     */
+    public List<Transformation> getKeyTransformations(String key) {
+        List<Transformation> transformations = transformationsMap.get(key);
+        if (patternTransformations.isEmpty()) {
+            return transformations;
+        }
+        List<PatternTransformation> matching = null;
+        for (PatternTransformation patternTransformation : patternTransformations) {
+            if (patternTransformation.keyPattern.matcher(key).matches()) {
+                if (matching == null) {
+                    matching = new ArrayList<PatternTransformation>();
+                }
+                matching.add(patternTransformation);
+            }
+        }
+        if (matching == null) {
+            return transformations;
+        }
+
+        // merge both the lists by the order of the rules
+        List<Transformation> result = new ArrayList<Transformation>();
+        int i = 0;
+        for (PatternTransformation patternTransformation : matching) {
+            while (transformations != null && i < transformations.size()
+                && transformationsOrder.get(transformations.get(i)) < patternTransformation.order) {
+                result.add(transformations.get(i++));
+            }
+            result.add(patternTransformation.transformation);
+        }
+        while (transformations != null && i < transformations.size()) {
+            result.add(transformations.get(i++));
+        }
+        return result;
     }
 
     public void setTransformations(String extraImportTransformations) {
-        this.transformationsMap = new HashMap<String, Transformation>();
+        this.transformationsMap = new HashMap<String, List<Transformation>>();
+        this.transformationsOrder = new IdentityHashMap<Transformation, Integer>();
+        this.patternTransformations = new ArrayList<PatternTransformation>();
         this.extraTransformations = extraImportTransformations;
         if (StringUtils.isEmpty(extraImportTransformations)) {
             return;
         }
 
         try {
-            HSSFWorkbook wbEscaping = new HSSFWorkbook(new FileInputStream(new File(this.extraTransformations)));
-            HSSFSheet sheetEscaping = wbEscaping.getSheetAt(0);
-            Iterator<Row> it = sheetEscaping.rowIterator();
-            while (it.hasNext()) {
-                Row row = it.next();
-                if (row == null || row.getCell(0) == null || row.getCell(1) == null || row.getCell(2) == null) {
+            int order = 0;
+            for (String[] cells : WorkbookReader.readRows(new File(this.extraTransformations))) {
+                String key = cells[0];
+                if (key == null || WorkbookReader.getCell(cells, 1) == null
+                    || WorkbookReader.getCell(cells, 2) == null) {
                     return;
                 }
-                Transformation transformation = new Transformation(row.getCell(1).getStringCellValue(),
-                    row.getCell(2).getStringCellValue(), row.getCell(3) != null ? row.getCell(3).getStringCellValue()
-                    : null);
-                transformationsMap.put(row.getCell(0).getStringCellValue(), transformation);
+                Transformation transformation = new Transformation(cells[1], cells[2],
+                    WorkbookReader.getCell(cells, 3));
+                if (key.length() > 2 && key.startsWith("/") && key.endsWith("/")) {
+                    Pattern keyPattern = Pattern.compile(key.substring(1, key.length() - 1));
+                    patternTransformations.add(new PatternTransformation(keyPattern, transformation, order));
+                } else {
+                    List<Transformation> transformations = transformationsMap.get(key);
+                    if (transformations == null) {
+                        transformations = new ArrayList<Transformation>(1);
+                        transformationsMap.put(key, transformations);
+                    }
+                    transformations.add(transformation);
+                    transformationsOrder.put(transformation, order);
+                }
+                order++;
             }
         } catch (FileNotFoundException e) {
 
@@ -171,15 +277,11 @@ public class ImportConfig extends CommonConfig {
         }
 
         try {
-            HSSFWorkbook wbEscaping = new HSSFWorkbook(new FileInputStream(new File(this.mixedContent)));
-            HSSFSheet sheetEscaping = wbEscaping.getSheetAt(0);
-            Iterator<Row> it = sheetEscaping.rowIterator();
-            while (it.hasNext()) {
-                Row row = it.next();
-                if (row == null || row.getCell(0) == null) {
+            for (String[] cells : WorkbookReader.readRows(new File(this.mixedContent))) {
+                if (cells[0] == null) {
                     return;
                 }
-                mixedContentSet.add(row.getCell(0).getStringCellValue());
+                mixedContentSet.add(cells[0]);
             }
         } catch (FileNotFoundException e) {
 
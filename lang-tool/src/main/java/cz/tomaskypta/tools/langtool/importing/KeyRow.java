@@ -0,0 +1,80 @@
+package cz.tomaskypta.tools.langtool.importing;
+
+import java.util.List;
+
+/**
+ * Key column of a single row of the imported sheet.
+ * <p>
+ * The key is classified only once per row and the result is shared by the output documents of all the languages.
+ */
+class KeyRow {
+
+    enum Type {
+        /** Empty or ignored key, only adds an empty text node. */
+        EMPTY,
+        COMMENT,
+        STRING,
+        PLURALS_ITEM,
+        ARRAY_ITEM
+    }
+
+    final Type type;
+    final String key;
+    /** Name of the plurals or string array the item belongs to. */
+    String name;
+    String quantity;
+    String comment;
+    /** Transformations of the value in their order or null if there are none. */
+    List<ImportConfig.Transformation> transformations;
+    boolean escaped;
+    boolean mixedContent;
+
+    private KeyRow(Type type, String key) {
+        this.type = type;
+        this.key = key;
+    }
+
+    /**
+     * @return the classified key or null if the row has no key cell and should be skipped
+     */
+    static KeyRow classify(String key, ImportConfig config) {
+        if (key == null) {
+            return null;
+        }
+        if ("".equals(key)) {
+            return new KeyRow(Type.EMPTY, key);
+        }
+        if (key.startsWith("/**")) {
+            KeyRow row = new KeyRow(Type.COMMENT, key);
+            row.comment = key.substring(3, key.length() - 3);
+            return row;
+        }
+        if (key.startsWith("//")) {
+            KeyRow row = new KeyRow(Type.COMMENT, key);
+            row.comment = key.substring(2);
+            return row;
+        }
+        if (config.isIgnoredKey(key)) {
+            return new KeyRow(Type.EMPTY, key);
+        }
+
+        KeyRow row;
+        int plurarIndex = key.indexOf("#");
+        int arrayIndex = key.indexOf("[");
+        if (plurarIndex >= 0) {
+            row = new KeyRow(Type.PLURALS_ITEM, key);
+            row.name = key.substring(0, plurarIndex);
+            row.quantity = key.substring(plurarIndex + 1);
+        } else if (arrayIndex >= 0) {
+            row = new KeyRow(Type.ARRAY_ITEM, key);
+            row.name = key.substring(0, arrayIndex);
+            // we don't really need the index
+        } else {
+            row = new KeyRow(Type.STRING, key);
+            row.mixedContent = config.isMixedContent(key);
+        }
+        row.transformations = config.getKeyTransformations(key);
+        row.escaped = config.isEscapedKey(key);
+        return row;
+    }
+}
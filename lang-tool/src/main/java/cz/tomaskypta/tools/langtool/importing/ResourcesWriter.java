@@ -0,0 +1,212 @@
+package cz.tomaskypta.tools.langtool.importing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes an Android resources file incrementally, element by element.
+ * <p>
+ * The output is indented by two spaces per level with every element and comment on its own line, the same way
+ * as it used to be written by the indenting identity transformer. Only mixed content of a string is written
+ * inline, so that no whitespace is added to the value.
+ */
+class ResourcesWriter {
+
+    private static final String INDENT = "  ";
+    private static final String NEW_LINE = "\n";
+    private static final String ROOT = "resources";
+
+    private static final XMLOutputFactory sFactory = XMLOutputFactory.newInstance();
+
+    private final Writer mOut;
+    private final XMLStreamWriter mXml;
+    private boolean mRootStarted;
+    private String mGroupNode;
+    private String mGroupName;
+
+    ResourcesWriter(OutputStream out) throws IOException {
+        mOut = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        mOut.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+        mOut.write(NEW_LINE);
+        try {
+            synchronized (sFactory) {
+                mXml = sFactory.createXMLStreamWriter(mOut);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    void comment(String comment) throws IOException {
+        endGroup();
+        try {
+            startChild(1);
+            mXml.writeComment(comment);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes a string directly into the resources.
+     */
+    void string(String key, String value) throws IOException {
+        endGroup();
+        element(1, "string", key, null, value);
+    }
+
+    /**
+     * Writes a string with mixed content directly into the resources.
+     */
+    void string(Element content) throws IOException {
+        endGroup();
+        try {
+            startChild(1);
+            writeNode(content);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes an item of a plurals or string array. The group element is started unless the previous item
+     * belongs to the same group.
+     */
+    void item(String groupNode, String groupName, String quantity, String value) throws IOException {
+        if (!groupNode.equals(mGroupNode) || !groupName.equals(mGroupName)) {
+            endGroup();
+            try {
+                startChild(1);
+                mXml.writeStartElement(groupNode);
+                mXml.writeAttribute("name", groupName);
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+            mGroupNode = groupNode;
+            mGroupName = groupName;
+        }
+        element(2, "item", null, quantity, value);
+    }
+
+    void close() throws IOException {
+        endGroup();
+        try {
+            if (mRootStarted) {
+                mXml.writeCharacters(NEW_LINE);
+                mXml.writeEndElement();
+            } else {
+                mXml.writeEmptyElement(ROOT);
+            }
+            mXml.writeCharacters(NEW_LINE);
+            mXml.flush();
+            mXml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            mOut.close();
+        }
+    }
+
+    /**
+     * Closes the output without finishing the document, e.g. after a failure.
+     */
+    void abort() {
+        try {
+            mOut.close();
+        } catch (IOException e) {
+            // already failing
+        }
+    }
+
+    private void endGroup() throws IOException {
+        if (mGroupNode == null) {
+            return;
+        }
+        try {
+            mXml.writeCharacters(NEW_LINE + INDENT);
+            mXml.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        mGroupNode = null;
+        mGroupName = null;
+    }
+
+    private void element(int depth, String nodeName, String key, String quantity, String value) throws IOException {
+        try {
+            startChild(depth);
+            if (value.isEmpty()) {
+                mXml.writeEmptyElement(nodeName);
+            } else {
+                mXml.writeStartElement(nodeName);
+            }
+            if (key != null) {
+                mXml.writeAttribute("name", key);
+            }
+            if (quantity != null) {
+                mXml.writeAttribute("quantity", quantity);
+            }
+            if (!value.isEmpty()) {
+                mXml.writeCharacters(value);
+                mXml.writeEndElement();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void startChild(int depth) throws XMLStreamException {
+        if (!mRootStarted) {
+            mXml.writeStartElement(ROOT);
+            mRootStarted = true;
+        }
+        mXml.writeCharacters(NEW_LINE);
+        for (int i = 0; i < depth; i++) {
+            mXml.writeCharacters(INDENT);
+        }
+    }
+
+    private void writeNode(Node node) throws XMLStreamException {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                if (node.hasChildNodes()) {
+                    mXml.writeStartElement(node.getNodeName());
+                } else {
+                    mXml.writeEmptyElement(node.getNodeName());
+                }
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Node attribute = attributes.item(i);
+                    mXml.writeAttribute(attribute.getNodeName(), attribute.getNodeValue());
+                }
+                if (node.hasChildNodes()) {
+                    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                        writeNode(child);
+                    }
+                    mXml.writeEndElement();
+                }
+                break;
+            case Node.TEXT_NODE:
+                mXml.writeCharacters(node.getNodeValue());
+                break;
+            case Node.CDATA_SECTION_NODE:
+                mXml.writeCData(node.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                mXml.writeComment(node.getNodeValue());
+                break;
+            default:
+                break;
+        }
+    }
+}
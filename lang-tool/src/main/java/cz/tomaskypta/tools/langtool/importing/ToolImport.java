@@ -1,44 +1,47 @@
 package cz.tomaskypta.tools.langtool.importing;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
+import cz.tomaskypta.tools.langtool.ResourceTree;
+import cz.tomaskypta.tools.langtool.TranslationTable;
+import cz.tomaskypta.tools.langtool.importing.reading.WorkbookReader;
 import cz.tomaskypta.tools.langtool.util.EscapingUtils;
+import cz.tomaskypta.tools.langtool.util.Metrics;
+import cz.tomaskypta.tools.langtool.util.NullOutputStream;
+import cz.tomaskypta.tools.langtool.util.StringPool;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.Text;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 public class ToolImport {
 
-    private DocumentBuilder builder;
     private File outResDir;
     private PrintStream out;
-    private HashMap<String, String> mMapping;
+    private Map<String, String> mMapping;
     private ImportConfig mConfig;
+    private List<String> mModifiedLangs = Collections.synchronizedList(new ArrayList<String>());
+    /** Resources imported into memory instead of the disk. */
+    private ResourceTree mTree;
+    /** Pool of the values of the rows kept in memory. */
+    private final StringPool mStrings = new StringPool();
 
-    public ToolImport(PrintStream out) throws ParserConfigurationException {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        builder = dbf.newDocumentBuilder();
+    public ToolImport(PrintStream out) {
         this.out = out == null ? System.out : out;
     }
 
@@ -53,30 +56,68 @@ public class ToolImport {
             return;
         }
 
-        HSSFWorkbook wb = new HSSFWorkbook(new FileInputStream(new File(config.inputFile)));
-        HSSFSheet sheet = wb.getSheetAt(0);
-
-        HSSFSheet sheetMapping = null;
-        if (!StringUtils.isEmpty(config.mappingFile)) {
-            HSSFWorkbook wbMapping = new HSSFWorkbook(new FileInputStream(new File(config.mappingFile)));
-            sheetMapping = wbMapping.getSheetAt(0);
+        if (config.outputFileName == null) {
+            config.outputFileName = "strings.xml";
         }
 
-        String outputDirName = config.outputDirName;
-        if (StringUtils.isEmpty(outputDirName)) {
-            outputDirName = sheet.getSheetName();
+        ToolImport tool = new ToolImport(null);
+        tool.mConfig = config;
+        tool.mMapping = loadMapping(config.mappingFile);
+        tool.parse(new File(config.inputFile));
+    }
+
+    /**
+     * Imports rows of a sheet which was already read into memory, e.g. a part of a split sheet.
+     *
+     * @param mapping mapping of the languages loaded by {@link #loadMapping(String)}
+     * @param sheetName name of the sheet used as the output directory, unless set by the config
+     * @param titleRow cells of the title row with the languages
+     * @param rows rows following the title row, null for missing rows
+     */
+    public static void run(PrintStream out, ImportConfig config, Map<String, String> mapping, String sheetName,
+                           String[] titleRow, List<String[]> rows) throws IOException {
+        if (config.outputFileName == null) {
+            config.outputFileName = "strings.xml";
         }
 
+        ToolImport tool = new ToolImport(out);
+        tool.mConfig = config;
+        tool.mMapping = mapping;
+        tool.parse(sheetName, titleRow, rows);
+    }
+
+    /**
+     * Imports the first sheet of a workbook read from the stream into resources kept in memory, without touching
+     * the disk. Many imports can run at once, each with its own config.
+     * <p>
+     * The workbook is read as .csv or .tsv when the input file of the config has such extension, otherwise it has to
+     * be .xls or .xlsx.
+     *
+     * @param out stream for the progress output, null for none
+     * @param mapping mapping of the languages, null for none
+     * @param workbook stream of the workbook, which is not closed
+     * @return the imported resource files of all the languages
+     */
+    public static ResourceTree importTree(PrintStream out, ImportConfig config, Map<String, String> mapping,
+                                          InputStream workbook) throws IOException {
         if (config.outputFileName == null) {
             config.outputFileName = "strings.xml";
         }
 
-        ToolImport tool = new ToolImport(null);
+        ToolImport tool = new ToolImport(out == null ? new PrintStream(new NullOutputStream()) : out);
         tool.mConfig = config;
-        tool.outResDir = new File("out/" + outputDirName + "/res");
-        tool.outResDir.mkdirs();
-        tool.prepareMapping(sheetMapping);
-        tool.parse(sheet);
+        tool.mMapping = mapping;
+        tool.mTree = new ResourceTree();
+        SheetImporter importer = tool.new SheetImporter();
+        try {
+            long start = System.nanoTime();
+            WorkbookReader.readFirstSheet(workbook, config.inputFile, importer);
+            config.metrics.addPhase(Metrics.PHASE_WORKBOOK_READ, System.nanoTime() - start - importer.getWriteTime());
+            importer.finish();
+        } finally {
+            importer.abort();
+        }
+        return tool.mTree;
     }
 
     public static void run(PrintStream out, String projectDir, String input) throws IOException, ParserConfigurationException, TransformerException {
@@ -86,215 +127,505 @@ public class ToolImport {
             return;
         }
 
-        HSSFWorkbook wb = new HSSFWorkbook(new FileInputStream(new File(input)));
-        HSSFSheet sheet = wb.getSheetAt(0);
-
-
+        tool.mConfig = new ImportConfig();
+        tool.mConfig.outputFileName = "strings.xml";
         tool.outResDir = new File(projectDir, "/res");
         //tool.outResDir.mkdirs();
-        tool.parse(sheet);
+        tool.parse(new File(input));
     }
 
-    private void prepareMapping(HSSFSheet sheetMapping) {
-        if (sheetMapping == null) {
-            return;
+    /**
+     * @return mapping of the languages or null if there is no mapping file
+     */
+    public static Map<String, String> loadMapping(String mappingFile) throws IOException {
+        if (StringUtils.isEmpty(mappingFile)) {
+            return null;
         }
-        mMapping = new HashMap<String, String>();
-        Iterator<Row> it = sheetMapping.rowIterator();
-        while (it.hasNext()) {
-            Row row = it.next();
-            mMapping.put(row.getCell(0).getStringCellValue(), row.getCell(1).getStringCellValue());
+        Map<String, String> mapping = new HashMap<String, String>();
+        for (String[] cells : WorkbookReader.readRows(new File(mappingFile))) {
+            mapping.put(cells[0], WorkbookReader.getCell(cells, 1));
         }
+        return mapping;
     }
 
-    private void parse(HSSFSheet sheet) throws IOException, TransformerException {
-        Row row = sheet.getRow(0);
-        Iterator<Cell> cells = row.cellIterator();
-        cells.next();// ignore key
-        int i = 1;
-        while (cells.hasNext()) {
-            String lang = cells.next().toString();
-            if (mMapping != null && mMapping.containsKey(lang)) {
-                lang = mMapping.get(lang);
-            }
-            generateLang(sheet, lang, i);
-            i++;
+    /**
+     * Reads the input workbook row by row and writes every row to the output files of all the languages at once.
+     */
+    private void parse(File input) throws IOException {
+        SheetImporter importer = new SheetImporter();
+        try {
+            long start = System.nanoTime();
+            WorkbookReader.readFirstSheet(input, importer);
+            // without the time of the output files written along the way
+            mConfig.metrics.addPhase(Metrics.PHASE_WORKBOOK_READ,
+                System.nanoTime() - start - importer.getWriteTime());
+            mConfig.metrics.count(Metrics.BYTES_READ, input.length());
+            importer.finish();
+        } finally {
+            importer.abort();
         }
     }
 
-    private void generateLang(HSSFSheet sheet, String lang, int column) throws IOException,
-        TransformerException {
-
-        Document dom = builder.newDocument();
-        Element root = dom.createElement("resources");
-        dom.appendChild(root);
-
-        Iterator<Row> iterator = sheet.rowIterator();
-        iterator.next();//ignore first row;
-        Element pluralsNode = null;
-        Element stringArrayNode = null;
-        String plurarName = null;
-        String arrayName = null;
-
-        while (iterator.hasNext()) {
-            HSSFRow row = (HSSFRow)iterator.next();
-            Cell cell = row.getCell(0);// android key
-            if (cell == null) {
-                continue;
-            }
-            String key = cell.toString();
-            if (key == null || "".equals(key)) {
-                root.appendChild(dom.createTextNode(""));
-                continue;
-            }
-            if (key.startsWith("/**")) {
-                root.appendChild(dom.createComment(key.substring(3, key.length() - 3)));
-                continue;
+    /**
+     * Imports rows of a sheet which was already read into memory.
+     *
+     * @param rows rows following the title row, null for missing rows
+     */
+    private void parse(String sheetName, String[] titleRow, List<String[]> rows) throws IOException {
+        SheetImporter importer = new SheetImporter();
+        try {
+            importer.onSheet(sheetName);
+            importer.onRow(0, titleRow);
+            for (int i = 0; i < rows.size(); i++) {
+                String[] cells = rows.get(i);
+                if (cells != null) {
+                    importer.onRow(i + 1, cells);
+                }
             }
+            importer.finish();
+        } finally {
+            importer.abort();
+        }
+    }
 
-            if (key.startsWith("//")) {
-                root.appendChild(dom.createComment(key.substring(2)));
-                continue;
+    /**
+     * Imports rows of a sheet one by one. The key of each row is classified only once for all the languages.
+     * <p>
+     * When running with more threads, the rows are kept in memory instead, with their values in a translation table
+     * by columns of the languages, and the output files of the languages are written in parallel.
+     */
+    private class SheetImporter implements WorkbookReader.RowHandler {
+
+        final boolean parallel = mConfig.threads > 1;
+        final List<String> langs = new ArrayList<String>();
+        final List<Integer> columns = new ArrayList<Integer>();
+        final List<LangBuilder> builders = new ArrayList<LangBuilder>();
+        final List<KeyRow> keyRows = new ArrayList<KeyRow>();
+        /** Values of the rows kept in memory, ids of the entries are indexes of the rows. */
+        TranslationTable values;
+        boolean titleRow = true;
+
+        @Override
+        public void onSheet(String name) {
+            if (outResDir != null || mTree != null) {
+                return;
             }
-
-            if (mConfig.isIgnoredKey(key)) {
-                root.appendChild(dom.createTextNode(""));
-                continue;
+            String outputDirName = mConfig.outputDirName;
+            if (StringUtils.isEmpty(outputDirName)) {
+                outputDirName = name;
             }
+            outResDir = new File(mConfig.outputDir, "out/" + outputDirName + "/res");
+            outResDir.mkdirs();
+        }
 
-            int plurarIndex = key.indexOf("#");
-            int arrayIndex = key.indexOf("[");
-
-            if (plurarIndex >= 0) {
-                // plurals
-                Cell valueCell = row.getCell(column);
-                String value = "";
-                if (valueCell != null) {
-                    value = valueCell.toString();// value
+        @Override
+        public void onRow(int rowIndex, String[] cells) throws IOException {
+            if (titleRow) {
+                titleRow = false;
+                // ignore key
+                for (int i = 1; i < cells.length; i++) {
+                    String lang = cells[i];
+                    if (lang == null) {
+                        continue;
+                    }
+                    if (mMapping != null && mMapping.containsKey(lang)) {
+                        lang = mMapping.get(lang);
+                    }
+                    // more columns of the same language write the same file, the last one wins
+                    String dirName = getValuesDirName(lang);
+                    for (int j = 0; j < langs.size(); j++) {
+                        if (getValuesDirName(langs.get(j)).equals(dirName)) {
+                            langs.remove(j);
+                            columns.remove(j);
+                            break;
+                        }
+                    }
+                    langs.add(lang);
+                    columns.add(i);
                 }
-                String plurarNameNew = key.substring(0, plurarIndex);
-                String quantity = key.substring(plurarIndex + 1);
-                if (!plurarNameNew.equals(plurarName)) {
-                    plurarName = plurarNameNew;
-                    pluralsNode = dom.createElement("plurals");
-                    pluralsNode.setAttribute("name", plurarName);
-                }
-                value = prepareOutputValue(lang, key, value);
-                addContent(dom, pluralsNode, value, "item", null, quantity);
-
-                root.appendChild(pluralsNode);
-            } else if (arrayIndex >= 0) {
-                // string-array
-                Cell valueCell = row.getCell(column);
-                String value = "";
-                if (valueCell != null) {
-                    value = valueCell.toString();// value
+                if (parallel) {
+                    values = new TranslationTable(langs);
+                } else {
+                    for (int i = 0; i < langs.size(); i++) {
+                        builders.add(new LangBuilder(langs.get(i), columns.get(i)));
+                    }
                 }
-                String arrayNameNew = key.substring(0, arrayIndex);
-                // we don't really need the index
-//                String tmp = key.substring(arrayIndex+1);
-//                int index = Integer.parseInt(tmp.substring(0, tmp.indexOf("]")));
-
-                // it's not bullet-proof, but for the time being good enough
-                if (!arrayNameNew.equals(arrayName)) {
-                    arrayName = arrayNameNew;
-                    stringArrayNode = dom.createElement("string-array");
-                    stringArrayNode.setAttribute("name", arrayName);
+                return;
+            }
+            KeyRow row = KeyRow.classify(cells[0], mConfig);
+            if (row == null) {
+                return;
+            }
+            if (parallel) {
+                keyRows.add(row);
+                int id = values.add(row.key);
+                values.setFlag(TranslationTable.FLAG_PLURAL, id, row.type == KeyRow.Type.PLURALS_ITEM);
+                values.setFlag(TranslationTable.FLAG_ARRAY, id, row.type == KeyRow.Type.ARRAY_ITEM);
+                for (int i = 0; i < columns.size(); i++) {
+                    int column = columns.get(i);
+                    if (column < cells.length) {
+                        values.setValue(i, id, mStrings.intern(cells[column]));
+                    }
                 }
+                return;
+            }
+            for (LangBuilder lang : builders) {
+                lang.addRow(row, lang.column < cells.length ? cells[lang.column] : null);
+            }
+        }
 
-                value = prepareOutputValue(lang, key, value);
-                addContent(dom, stringArrayNode, value, "item", null, null);
+        /**
+         * @return time spent by writing of the output files so far
+         */
+        long getWriteTime() {
+            long nanos = 0;
+            for (LangBuilder lang : builders) {
+                nanos += lang.nanos;
+            }
+            return nanos;
+        }
 
-                root.appendChild(stringArrayNode);
+        void finish() throws IOException {
+            if (parallel) {
+                generateInParallel(keyRows, values);
             } else {
-                //string
-                Cell valueCell = row.getCell(column);
-                if (valueCell == null) {
-                    addEmptyKeyValue(dom, root, key);
-                    continue;
+                for (LangBuilder lang : builders) {
+                    lang.close();
                 }
-                String value = valueCell.toString();// value
+            }
+            if (mConfig.onlyChanged && mTree == null) {
+                reportModifiedLangs();
+            }
+            if (parallel) {
+                mStrings.count(mConfig.metrics);
+            }
+        }
 
-                if (value.isEmpty()) {
-                    addEmptyKeyValue(dom, root, key);
-                } else {
+        /**
+         * Closes the output files left open by a failure.
+         */
+        void abort() {
+            for (LangBuilder lang : builders) {
+                lang.abort();
+            }
+        }
+    }
 
-                    value = prepareOutputValue(lang, key, value);
+    private void reportModifiedLangs() {
+        if (mModifiedLangs.isEmpty()) {
+            out.println("No language was modified in " + outResDir);
+            return;
+        }
+        Collections.sort(mModifiedLangs);
+        out.println("Modified languages in " + outResDir + ": " + StringUtils.join(mModifiedLangs, ", "));
+    }
 
-                    addContent(dom, root, value, "string", key, null);
+    private void generateInParallel(final List<KeyRow> keyRows, final TranslationTable values) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(mConfig.threads);
+        try {
+            List<ForkJoinTask<Void>> tasks = new ArrayList<ForkJoinTask<Void>>();
+            for (int i = 0; values != null && i < values.getLocaleCount(); i++) {
+                final int locale = i;
+                tasks.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        LangBuilder langBuilder = new LangBuilder(values.getLocale(locale), -1);
+                        try {
+                            for (int row = 0; row < keyRows.size(); row++) {
+                                langBuilder.addRow(keyRows.get(row), values.getValue(locale, row));
+                            }
+                            langBuilder.close();
+                        } finally {
+                            langBuilder.abort();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (ForkJoinTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while importing", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException)cause;
+                    }
+                    throw new IOException("Cannot import", cause);
                 }
             }
-
+        } finally {
+            pool.shutdownNow();
         }
-
-        save(dom, lang);
     }
 
-    private void addContent(Document dom, Element root, String value, String nodeName, String key, String quantity) {
-        if (!mConfig.isMixedContent(key)) {
-            addContentAsString(dom, root, value, nodeName, key, quantity);
-            return;
+    /**
+     * Writes the resources file of a single language column, one row after another.
+     * <p>
+     * When only changed files should be written, the file is rendered into a buffer first and written only if its
+     * content differs from the file on disk. When importing into memory, the buffer is put into the resource tree.
+     * <p>
+     * All the items of a plurals or string array are written in a single element, placed after its last item, even
+     * when other rows are between the items. Rows following the latest plurals or string array are therefore kept
+     * until it cannot get more items.
+     */
+    private class LangBuilder {
+
+        final String lang;
+        /** Column of the language in the sheet, -1 for values taken from the translation table. */
+        final int column;
+        final String dirName;
+        final File outputFile;
+        final ByteArrayOutputStream buffer;
+        final ResourcesWriter writer;
+        long nanos;
+        int keys;
+        int missingKeys;
+        int plurals;
+        int arrays;
+        int mixedContentParses;
+        /** Rows not written yet, the latest plurals and string array can still move behind them. */
+        final List<PendingRow> pending = new ArrayList<PendingRow>();
+        /** The latest plurals and string array, each of them is closed by the next one of another name. */
+        PendingRow openPlurals;
+        PendingRow openArray;
+        boolean closed;
+
+        LangBuilder(String lang, int column) throws IOException {
+            long start = System.nanoTime();
+            this.lang = lang;
+            this.column = column;
+            this.dirName = getValuesDirName(lang);
+            this.outputFile = mTree != null ? null : getOutputFile(dirName);
+            if (mConfig.onlyChanged || mTree != null) {
+                this.buffer = new ByteArrayOutputStream();
+                this.writer = new ResourcesWriter(buffer);
+            } else {
+                this.buffer = null;
+                this.writer = new ResourcesWriter(new FileOutputStream(outputFile));
+            }
+            nanos += System.nanoTime() - start;
         }
 
-        try {
-            DocumentBuilder db = DocumentBuilderFactory
-                .newInstance()
-                .newDocumentBuilder();
-            // TODO improve
-            // currently ignoring errors - there were irrelevant messages about '&'
-            db.setErrorHandler(new ErrorHandler() {
-                @Override
-                public void warning(SAXParseException exception) throws SAXException {
+        void addRow(KeyRow row, String valueCell) throws IOException {
+            long start = System.nanoTime();
+            if (row.type == KeyRow.Type.PLURALS_ITEM) {
+                openPlurals = addItem(openPlurals, row, valueCell);
+            } else if (row.type == KeyRow.Type.ARRAY_ITEM) {
+                openArray = addItem(openArray, row, valueCell);
+            } else {
+                pending.add(new PendingRow(row, valueCell));
+            }
+            writePending();
+            nanos += System.nanoTime() - start;
+        }
+
+        /**
+         * Adds the item to the group, or to a new group if the item belongs to another one, and moves the group
+         * behind all the pending rows.
+         *
+         * @return group of the item
+         */
+        private PendingRow addItem(PendingRow group, KeyRow row, String valueCell) {
+            if (group == null || !group.row.name.equals(row.name)) {
+                group = new PendingRow(row, null);
+                group.items = new ArrayList<PendingRow>();
+            } else {
+                pending.remove(pending.lastIndexOf(group));
+            }
+            group.items.add(new PendingRow(row, valueCell));
+            pending.add(group);
+            return group;
+        }
 
+        /**
+         * Writes the pending rows up to the first group which can still get more items.
+         */
+        private void writePending() throws IOException {
+            int written = 0;
+            for (PendingRow pendingRow : pending) {
+                if (pendingRow == openPlurals || pendingRow == openArray) {
+                    break;
+                }
+                if (pendingRow.items == null) {
+                    writeRow(pendingRow.row, pendingRow.value);
+                } else {
+                    for (PendingRow item : pendingRow.items) {
+                        writeRow(item.row, item.value);
+                    }
                 }
+                written++;
+            }
+            pending.subList(0, written).clear();
+        }
 
-                @Override
-                public void error(SAXParseException exception) throws SAXException {
+        private void writeRow(KeyRow row, String valueCell) throws IOException {
+            switch (row.type) {
+                case EMPTY:
+                    break;
+                case COMMENT:
+                    writer.comment(row.comment);
+                    break;
+                case PLURALS_ITEM: {
+                    String value = "";
+                    if (valueCell != null) {
+                        value = valueCell;// value
+                    }
+                    value = prepareOutputValue(lang, row, value);
+                    writer.item("plurals", row.name, row.quantity, value);
+                    plurals++;
+                    break;
+                }
+                case ARRAY_ITEM: {
+                    String value = "";
+                    if (valueCell != null) {
+                        value = valueCell;// value
+                    }
+                    // it's not bullet-proof, but for the time being good enough
+                    value = prepareOutputValue(lang, row, value);
+                    writer.item("string-array", row.name, null, value);
+                    arrays++;
+                    break;
+                }
+                case STRING:
+                    if (valueCell == null || valueCell.isEmpty()) {
+                        addEmptyKeyValue(writer, row.key);
+                        missingKeys++;
+                    } else {
+                        String value = prepareOutputValue(lang, row, valueCell);
+                        addContent(writer, value, row.key, row.mixedContent);
+                        keys++;
+                        if (row.mixedContent) {
+                            mixedContentParses++;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
 
+        void close() throws IOException {
+            closed = true;
+            long start = System.nanoTime();
+            openPlurals = null;
+            openArray = null;
+            writePending();
+            writer.close();
+            String name = lang == null || lang.isEmpty() ? "default" : lang;
+            long bytesWritten;
+            if (mTree != null) {
+                byte[] content = buffer.toByteArray();
+                mTree.put(dirName, mConfig.outputFileName, content);
+                bytesWritten = content.length;
+            } else if (buffer != null) {
+                byte[] content = buffer.toByteArray();
+                bytesWritten = 0;
+                if (writeIfChanged(outputFile, content)) {
+                    mModifiedLangs.add(name);
+                    bytesWritten = content.length;
                 }
+            } else {
+                bytesWritten = outputFile.length();
+            }
+            nanos += System.nanoTime() - start;
+
+            Metrics metrics = mConfig.metrics;
+            metrics.addPhase(Metrics.PHASE_XML_WRITE, nanos);
+            metrics.addLocaleTime(name, nanos);
+            metrics.count(name, Metrics.KEYS, keys);
+            metrics.count(name, Metrics.MISSING_KEYS, missingKeys);
+            metrics.count(name, Metrics.PLURALS, plurals);
+            metrics.count(name, Metrics.ARRAYS, arrays);
+            metrics.count(name, Metrics.MIXED_CONTENT_PARSES, mixedContentParses);
+            metrics.count(name, Metrics.BYTES_WRITTEN, bytesWritten);
+        }
+
+        /**
+         * Closes the output file unless the builder was closed.
+         */
+        void abort() {
+            if (!closed) {
+                closed = true;
+                writer.abort();
+            }
+        }
+    }
+
+    /**
+     * Row of a language waiting to be written, or a plurals or string array with its items.
+     */
+    private static class PendingRow {
 
-                @Override
-                public void fatalError(SAXParseException exception) throws SAXException {
+        final KeyRow row;
+        final String value;
+        /** Items of a plurals or string array, null for other rows. */
+        List<PendingRow> items;
+
+        PendingRow(KeyRow row, String value) {
+            this.row = row;
+            this.value = value;
+        }
+    }
 
+    /**
+     * Replaces the file atomically by the content, unless the file already has the same content. A new file gets the
+     * default permissions, a replaced one keeps its permissions.
+     *
+     * @return true if the file was written
+     */
+    private static boolean writeIfChanged(File f, byte[] content) throws IOException {
+        if (f.exists() && f.length() == content.length) {
+            InputStream in = new BufferedInputStream(new FileInputStream(f));
+            try {
+                if (Arrays.equals(DigestUtils.sha(in), DigestUtils.sha(content))) {
+                    return false;
                 }
-            });
-            Element content = db
-                .parse(new ByteArrayInputStream(("<" + nodeName + ">" + value + "</" + nodeName + ">").getBytes()))
-                .getDocumentElement();
-            if (key != null) {
-                content.setAttribute("name", key);
+            } finally {
+                in.close();
             }
-            if (quantity != null) {
-                content.setAttribute("quantity", quantity);
+        }
+        Path target = f.toPath();
+        // not a temp file, which would be readable only by the owner
+        Path tmp = target.resolveSibling(f.getName() + ".tmp");
+        try {
+            Files.write(tmp, content);
+            if (f.exists() && Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(target));
             }
-            Node tmp = dom.importNode(content, true);
-            root.appendChild(tmp);
-        } catch (Exception e) {
-            addContentAsString(dom, root, value, nodeName, key, quantity);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
         }
+        return true;
     }
 
-    private void addContentAsString(Document dom, Element root, String value, String nodeName, String key, String quantity) {
-        Element node = dom.createElement(nodeName);
-        if (key != null) {
-            node.setAttribute("name", key);
+    private void addContent(ResourcesWriter writer, String value, String key, boolean mixedContent)
+        throws IOException {
+        if (!mixedContent) {
+            writer.string(key, value);
+            return;
         }
-        if (quantity != null) {
-            node.setAttribute("quantity", quantity);
+
+        Element content = FragmentParser.parse("string", value);
+        if (content == null) {
+            writer.string(key, value);
+            return;
         }
-        node.setTextContent(value);
-        root.appendChild(node);
+        content.setAttribute("name", key);
+        writer.string(content);
     }
 
-    private String prepareOutputValue(String lang, String key, String value) {
-        ImportConfig.Transformation tranformation = mConfig.getKeyTransformation(key);
-        if (tranformation != null) {
-            value = tranformation.apply(value, lang);
+    private String prepareOutputValue(String lang, KeyRow row, String value) {
+        if (row.transformations != null) {
+            value = ImportConfig.Transformation.applyAll(row.transformations, value, lang);
         }
         if (mConfig.unescapeFirst) {
             value = EscapingUtils.unescapeQuotes(value);
         }
-        if (mConfig.isEscapedKey(key)) {
+        if (row.escaped) {
             value = EscapingUtils.escapeWithQuotes(value);
         } else {
             value = EscapingUtils.escapeWithBackslash(value);
@@ -302,28 +633,20 @@ public class ToolImport {
         return value;
     }
 
-    private static void addEmptyKeyValue(Document dom, Element root, String key) {
-        root.appendChild(dom.createComment(String.format(" TODO: string name=\"%s\" ", key)));
+    private static void addEmptyKeyValue(ResourcesWriter writer, String key) throws IOException {
+        writer.comment(String.format(" TODO: string name=\"%s\" ", key));
     }
 
-    private void save(Document doc, String lang) throws TransformerException {
-        File dir;
+    private static String getValuesDirName(String lang) {
         if ("default".equals(lang) || lang == null || "".equals(lang)) {
-            dir = new File(outResDir, "values");
-        } else {
-            dir = new File(outResDir, "values-" + lang);
+            return "values";
         }
-        dir.mkdir();
-
-        //DOMUtils.prettyPrint(doc);
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-
-        DOMSource source = new DOMSource(doc);
-        StreamResult result = new StreamResult(new File(dir, mConfig.outputFileName));
+        return "values-" + lang;
+    }
 
-        transformer.transform(source, result);
+    private File getOutputFile(String dirName) {
+        File dir = new File(outResDir, dirName);
+        dir.mkdir();
+        return new File(dir, mConfig.outputFileName);
     }
 }
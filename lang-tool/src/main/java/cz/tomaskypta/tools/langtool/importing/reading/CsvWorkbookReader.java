@@ -0,0 +1,50 @@
+package cz.tomaskypta.tools.langtool.importing.reading;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+
+import cz.tomaskypta.tools.langtool.util.CsvReader;
+
+/**
+ * Reads CSV and TSV files as a workbook with a single sheet named by the file, without Apache POI.
+ */
+class CsvWorkbookReader extends WorkbookReader {
+
+    private final char mSeparator;
+
+    CsvWorkbookReader(char separator) {
+        mSeparator = separator;
+    }
+
+    @Override
+    protected void readFirstSheet(File f) throws IOException {
+        String name = f.getName();
+        sheet(name.substring(0, name.lastIndexOf('.')));
+        CsvReader reader = new CsvReader(new FileInputStream(f).getChannel(), mSeparator);
+        try {
+            readRows(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    protected void readFirstSheet(InputStream in) throws IOException {
+        sheet("workbook");
+        readRows(new CsvReader(Channels.newChannel(in), mSeparator));
+    }
+
+    private void readRows(CsvReader reader) throws IOException {
+        String[] cells;
+        for (int rowIndex = 0; (cells = reader.readRow()) != null; rowIndex++) {
+            for (int column = 0; column < cells.length; column++) {
+                if (cells[column] != null) {
+                    cell(rowIndex, column, cells[column]);
+                }
+            }
+        }
+    }
+}
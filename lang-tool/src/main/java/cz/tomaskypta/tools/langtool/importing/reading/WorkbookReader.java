@@ -0,0 +1,199 @@
+package cz.tomaskypta.tools.langtool.importing.reading;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import cz.tomaskypta.tools.langtool.util.NonClosingInputStream;
+import org.apache.poi.POIXMLDocument;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+
+/**
+ * Streaming reader of the first sheet of a workbook.
+ * <p>
+ * Rows are reported to a {@link RowHandler} one by one as they are read from the file, the workbook is never
+ * loaded into memory as a whole. Both .xls and .xlsx workbooks are supported, the format is detected from the
+ * file content. Workbooks read from a stream are kept in memory as they are, but their rows are still reported one
+ * by one. Files with the {@code .csv} or {@code .tsv} extension are read as CSV or TSV, without loading Apache POI
+ * at all, any other content which is not a workbook is rejected.
+ */
+public abstract class WorkbookReader {
+
+    public interface RowHandler {
+
+        /**
+         * Called once with the name of the read sheet, before any of its rows.
+         */
+        void onSheet(String name);
+
+        /**
+         * Called for every row of the sheet containing at least a single cell, in the order of rows.
+         *
+         * @param cells string values of the cells indexed by column, null for missing cells
+         */
+        void onRow(int rowIndex, String[] cells) throws IOException;
+    }
+
+    /**
+     * Carries an exception of the handler through the parsers, which do not allow checked exceptions.
+     */
+    private static class HandlerException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        HandlerException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String TSV_EXTENSION = ".tsv";
+
+    private RowHandler mHandler;
+    private int mRowIndex = -1;
+    private List<String> mCells = new ArrayList<String>();
+
+    public static void readFirstSheet(File f, RowHandler handler) throws IOException {
+        WorkbookReader csvReader = forName(f.getName());
+        if (csvReader != null) {
+            csvReader.read(f, null, handler);
+            return;
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(f));
+        WorkbookReader reader;
+        try {
+            reader = forContent(in);
+        } finally {
+            in.close();
+        }
+        reader.read(f, null, handler);
+    }
+
+    /**
+     * Reads the first sheet of an .xls or .xlsx workbook from the stream, which is not closed.
+     */
+    public static void readFirstSheet(InputStream in, RowHandler handler) throws IOException {
+        readFirstSheet(in, null, handler);
+    }
+
+    /**
+     * Reads the first sheet of a workbook from the stream, which is not closed.
+     *
+     * @param fileName name of the workbook, read as CSV or TSV if it has such extension, or null
+     */
+    public static void readFirstSheet(InputStream in, String fileName, RowHandler handler) throws IOException {
+        // the POI parsers close the stream they read
+        in = new BufferedInputStream(new NonClosingInputStream(in));
+        WorkbookReader reader = fileName == null ? null : forName(fileName);
+        if (reader == null) {
+            reader = forContent(in);
+        }
+        reader.read(null, in, handler);
+    }
+
+    /**
+     * Reads all the rows of the first sheet, e.g. of a config list.
+     *
+     * @return cells of the rows indexed by column, null for missing cells
+     */
+    public static List<String[]> readRows(File f) throws IOException {
+        final List<String[]> rows = new ArrayList<String[]>();
+        readFirstSheet(f, new RowHandler() {
+            @Override
+            public void onSheet(String name) {
+            }
+
+            @Override
+            public void onRow(int rowIndex, String[] cells) {
+                rows.add(cells);
+            }
+        });
+        return rows;
+    }
+
+    /**
+     * @return value of the cell or null if the row has no such cell
+     */
+    public static String getCell(String[] cells, int column) {
+        return column < cells.length ? cells[column] : null;
+    }
+
+    /**
+     * @return reader of the CSV or TSV file with such extension, otherwise null
+     */
+    private static WorkbookReader forName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(CSV_EXTENSION)) {
+            return new CsvWorkbookReader(',');
+        }
+        if (name.endsWith(TSV_EXTENSION)) {
+            return new CsvWorkbookReader('\t');
+        }
+        return null;
+    }
+
+    /**
+     * Detects the format of the workbook from the header of the stream, which is reset back afterwards.
+     */
+    private static WorkbookReader forContent(InputStream in) throws IOException {
+        if (POIXMLDocument.hasOOXMLHeader(in)) {
+            return new XlsxWorkbookReader();
+        }
+        if (NPOIFSFileSystem.hasPOIFSHeader(in)) {
+            return new XlsWorkbookReader();
+        }
+        throw new IOException("Unsupported workbook format, expected .xls, .xlsx, .csv or .tsv");
+    }
+
+    private void read(File f, InputStream in, RowHandler handler) throws IOException {
+        mHandler = handler;
+        mRowIndex = -1;
+        mCells.clear();
+        try {
+            if (f != null) {
+                readFirstSheet(f);
+            } else {
+                readFirstSheet(in);
+            }
+            endRow();
+        } catch (HandlerException e) {
+            throw (IOException)e.getCause();
+        }
+    }
+
+    protected abstract void readFirstSheet(File f) throws IOException;
+
+    protected abstract void readFirstSheet(InputStream in) throws IOException;
+
+    protected void sheet(String name) {
+        mHandler.onSheet(name);
+    }
+
+    protected void cell(int rowIndex, int column, String value) {
+        if (rowIndex != mRowIndex) {
+            endRow();
+            mRowIndex = rowIndex;
+        }
+        while (mCells.size() <= column) {
+            mCells.add(null);
+        }
+        mCells.set(column, value);
+    }
+
+    protected void endRow() {
+        if (mRowIndex >= 0 && !mCells.isEmpty()) {
+            try {
+                mHandler.onRow(mRowIndex, mCells.toArray(new String[mCells.size()]));
+            } catch (IOException e) {
+                throw new HandlerException(e);
+            }
+        }
+        mRowIndex = -1;
+        mCells.clear();
+    }
+}
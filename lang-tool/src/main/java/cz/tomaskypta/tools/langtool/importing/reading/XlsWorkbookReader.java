@@ -0,0 +1,134 @@
+package cz.tomaskypta.tools.langtool.importing.reading;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+
+/**
+ * Reads .xls workbooks record by record using the HSSF event API.
+ */
+class XlsWorkbookReader extends WorkbookReader {
+
+    private static final short CONTINUE = 0;
+    private static final short STOP = 1;
+
+    @Override
+    protected void readFirstSheet(File f) throws IOException {
+        readFirstSheet(new NPOIFSFileSystem(f, true), f.toString());
+    }
+
+    @Override
+    protected void readFirstSheet(InputStream in) throws IOException {
+        readFirstSheet(new NPOIFSFileSystem(in), "workbook");
+    }
+
+    private void readFirstSheet(NPOIFSFileSystem fs, String name) throws IOException {
+        try {
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(new Listener());
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs.getRoot());
+        } catch (HSSFUserException e) {
+            throw new IOException("Cannot read " + name, e);
+        } finally {
+            fs.close();
+        }
+    }
+
+    private class Listener extends AbortableHSSFListener {
+
+        private List<BoundSheetRecord> mSheets = new ArrayList<BoundSheetRecord>();
+        private SSTRecord mSst;
+        private boolean mInSheet;
+        private FormulaRecord mStringFormula;
+
+        @Override
+        public short abortableProcessRecord(Record record) {
+            switch (record.getSid()) {
+                case BoundSheetRecord.sid:
+                    mSheets.add((BoundSheetRecord)record);
+                    break;
+                case SSTRecord.sid:
+                    mSst = (SSTRecord)record;
+                    break;
+                case BOFRecord.sid:
+                    if (((BOFRecord)record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                        mInSheet = true;
+                        BoundSheetRecord[] ordered = BoundSheetRecord.orderByBofPosition(mSheets);
+                        sheet(ordered.length > 0 ? ordered[0].getSheetname() : null);
+                    }
+                    break;
+                case EOFRecord.sid:
+                    if (mInSheet) {
+                        // only the first sheet is read
+                        return STOP;
+                    }
+                    break;
+                case LabelSSTRecord.sid:
+                    LabelSSTRecord labelSst = (LabelSSTRecord)record;
+                    cell(labelSst, mSst.getString(labelSst.getSSTIndex()).getString());
+                    break;
+                case LabelRecord.sid:
+                    LabelRecord label = (LabelRecord)record;
+                    cell(label, label.getValue());
+                    break;
+                case NumberRecord.sid:
+                    NumberRecord number = (NumberRecord)record;
+                    cell(number, String.valueOf(number.getValue()));
+                    break;
+                case BoolErrRecord.sid:
+                    BoolErrRecord boolErr = (BoolErrRecord)record;
+                    cell(boolErr, boolErr.isBoolean() ? String.valueOf(boolErr.getBooleanValue()).toUpperCase() : "");
+                    break;
+                case BlankRecord.sid:
+                    BlankRecord blank = (BlankRecord)record;
+                    cell(blank, "");
+                    break;
+                case FormulaRecord.sid:
+                    FormulaRecord formula = (FormulaRecord)record;
+                    if (formula.hasCachedResultString()) {
+                        // the value follows in a string record
+                        mStringFormula = formula;
+                    } else {
+                        cell(formula, String.valueOf(formula.getValue()));
+                    }
+                    break;
+                case StringRecord.sid:
+                    if (mStringFormula != null) {
+                        cell(mStringFormula, ((StringRecord)record).getString());
+                        mStringFormula = null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return CONTINUE;
+        }
+
+        private void cell(CellValueRecordInterface record, String value) {
+            if (mInSheet) {
+                XlsWorkbookReader.this.cell(record.getRow(), record.getColumn(), value);
+            }
+        }
+    }
+}
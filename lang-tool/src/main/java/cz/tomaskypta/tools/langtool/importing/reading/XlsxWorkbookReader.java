@@ -0,0 +1,113 @@
+package cz.tomaskypta.tools.langtool.importing.reading;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reads .xlsx workbooks by parsing the sheet XML with a SAX parser.
+ */
+class XlsxWorkbookReader extends WorkbookReader {
+
+    private static final String DISALLOW_DOCTYPE_FEATURE = "http://apache.org/xml/features/disallow-doctype-decl";
+
+    @Override
+    protected void readFirstSheet(File f) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(f, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Cannot read " + f, e);
+        }
+        readFirstSheet(pkg, f.toString());
+    }
+
+    @Override
+    protected void readFirstSheet(InputStream in) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(in);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Cannot read workbook", e);
+        }
+        readFirstSheet(pkg, "workbook");
+    }
+
+    private void readFirstSheet(OPCPackage pkg, String name) throws IOException {
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator)reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            InputStream sheet = sheets.next();
+            try {
+                sheet(sheets.getSheetName());
+
+                XMLReader parser = createParserFactory().newSAXParser().getXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(),
+                    new ReadOnlySharedStringsTable(pkg), new ContentsHandler(), false));
+                parser.parse(new InputSource(sheet));
+            } finally {
+                sheet.close();
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException("Cannot read " + name, e);
+        } catch (SAXException e) {
+            throw new IOException("Cannot read " + name, e);
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Cannot read " + name, e);
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    /**
+     * @return factory of parsers refusing DTDs, so an uploaded workbook cannot pull in local files or URLs
+     */
+    private static SAXParserFactory createParserFactory() throws ParserConfigurationException, SAXException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setFeature(DISALLOW_DOCTYPE_FEATURE, true);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        return factory;
+    }
+
+    private class ContentsHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private int mRowIndex;
+
+        @Override
+        public void startRow(int rowNum) {
+            mRowIndex = rowNum;
+        }
+
+        @Override
+        public void endRow() {
+            XlsxWorkbookReader.this.endRow();
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue) {
+            int column = new CellReference(cellReference).getCol();
+            XlsxWorkbookReader.this.cell(mRowIndex, column, formattedValue);
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+}
@@ -1,33 +1,94 @@
 package cz.tomaskypta.tools.langtool.importing.splitting;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
 import cz.tomaskypta.tools.langtool.importing.ImportConfig;
 import cz.tomaskypta.tools.langtool.importing.ToolImport;
+import cz.tomaskypta.tools.langtool.importing.reading.WorkbookReader;
+import cz.tomaskypta.tools.langtool.util.Metrics;
+import cz.tomaskypta.tools.langtool.util.StringPool;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
 
 /**
  * Created by Tomas Kypta on 19.09.14.
+ * <p>
+ * The input sheet is read only once. Each part is imported from a view of a range of its rows, the parts are
+ * imported in parallel when running with more threads.
  */
 public class ToolImportSplitter {
 
     private TreeMap<Integer, String> mSplittingMap;
     private HashMap<String, String> mOutputFileNames;
-    private File mIntermediateXlsDir;
+
+    /**
+     * Rows of the input sheet indexed by their row numbers, null for missing rows.
+     */
+    private static class SheetRows implements WorkbookReader.RowHandler {
+
+        String name;
+        final List<String[]> rows = new ArrayList<String[]>();
+        /** Pool of the cells, as all the rows are kept in memory until the parts are imported. */
+        final StringPool strings = new StringPool();
+
+        @Override
+        public void onSheet(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onRow(int rowIndex, String[] cells) {
+            while (rows.size() < rowIndex) {
+                rows.add(null);
+            }
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = strings.intern(cells[i]);
+            }
+            rows.add(cells);
+        }
+    }
+
+    /**
+     * Import of a part of the sheet, from a view of its rows.
+     */
+    private static class Part implements Callable<Void> {
+
+        final String name;
+        final ImportConfig config;
+        final Map<String, String> mapping;
+        final SheetRows sheet;
+        final List<String[]> rows;
+
+        Part(String name, ImportConfig config, Map<String, String> mapping, SheetRows sheet, List<String[]> rows) {
+            this.name = name;
+            this.config = config;
+            this.mapping = mapping;
+            this.sheet = sheet;
+            this.rows = rows;
+        }
+
+        void importRows() throws IOException {
+            System.out.println("Importing file: " + name);
+            ToolImport.run(null, config, mapping, sheet.name, sheet.rows.get(0), rows);
+        }
+
+        @Override
+        public Void call() throws IOException {
+            importRows();
+            return null;
+        }
+    }
 
     public static void run(SplittingConfig config) throws IOException,
         ParserConfigurationException, TransformerException {
@@ -47,99 +108,87 @@ public class ToolImportSplitter {
             return;
         }
 
-        HSSFWorkbook wb = new HSSFWorkbook(new FileInputStream(new File(config.inputFile)));
-        HSSFSheet sheet = wb.getSheetAt(0);
-
-        HSSFWorkbook wbConfig = new HSSFWorkbook(new FileInputStream(new File(config.splittingConfigFile)));
-        HSSFSheet sheetConfig = wbConfig.getSheetAt(0);
+        SheetRows sheet = new SheetRows();
+        File input = new File(config.inputFile);
+        long start = System.nanoTime();
+        WorkbookReader.readFirstSheet(input, sheet);
+        config.metrics.addPhase(Metrics.PHASE_WORKBOOK_READ, System.nanoTime() - start);
+        config.metrics.count(Metrics.BYTES_READ, input.length());
+        sheet.strings.count(config.metrics);
+        if (sheet.rows.isEmpty()) {
+            System.err.println("Cannot split, empty input file");
+            return;
+        }
 
         ToolImportSplitter tool = new ToolImportSplitter();
-        tool.mIntermediateXlsDir = new File("intermediate");
-        tool.mIntermediateXlsDir.mkdirs();
-
-        tool.prepareSplittingMap(sheetConfig);
-        tool.split(sheet);
-
-        for (String file : tool.mSplittingMap.values()) {
-            File outputFile = new File(tool.mIntermediateXlsDir, file);
-            System.out.println("Importing file: " + file);
-
-            ImportConfig partConfig = new ImportConfig(config);
-            partConfig.inputFile = outputFile.getPath();
-            partConfig.outputDirName = outputFile.getName().substring(0, outputFile.getName().indexOf('.'));
-            partConfig.outputFileName = tool.mOutputFileNames.get(file);
-            ToolImport.run(partConfig);
-        }
+        tool.prepareSplittingMap(WorkbookReader.readRows(new File(config.splittingConfigFile)));
+        tool.importParts(config, ToolImport.loadMapping(config.mappingFile), sheet);
     }
 
-    private void prepareSplittingMap(HSSFSheet sheetConfig) throws IOException, TransformerException {
+    private void prepareSplittingMap(List<String[]> rows) {
         mSplittingMap = new TreeMap<Integer, String>();
         mOutputFileNames = new HashMap<String, String>();
-        Iterator<Row> it = sheetConfig.rowIterator();
-        while (it.hasNext()) {
-            Row row = it.next();
-            if (row == null || row.getCell(0) == null || row.getCell(1) == null) {
+        for (String[] cells : rows) {
+            String splitName = WorkbookReader.getCell(cells, 1);
+            if (cells[0] == null || splitName == null) {
                 return;
             }
-            String splitName = row.getCell(1).getStringCellValue();
-            mSplittingMap.put((int)row.getCell(0).getNumericCellValue(), splitName);
-            if (row.getCell(2) != null) {
-                mOutputFileNames.put(splitName, row.getCell(2).getStringCellValue());
+            mSplittingMap.put((int)Double.parseDouble(cells[0]), splitName);
+            if (WorkbookReader.getCell(cells, 2) != null) {
+                mOutputFileNames.put(splitName, cells[2]);
             }
         }
     }
 
-    private void split(HSSFSheet inSheet) throws IOException, TransformerException {
-        Row inTitleRow = inSheet.getRow(0);
+    private void importParts(ImportConfig config, Map<String, String> mapping, SheetRows sheet) throws IOException {
+        List<Part> parts = new ArrayList<Part>();
+        boolean parallel = config.threads > 1 && mSplittingMap.size() > 1;
         for (Map.Entry<Integer, String> entry : mSplittingMap.entrySet()) {
-            System.out.println("Splitting into file: " + entry.getValue());
-            File outputFile = new File(mIntermediateXlsDir, entry.getValue());
-            FileOutputStream fos = null;
-
-            try {
-                fos = new FileOutputStream(outputFile);
-
-                HSSFWorkbook wb = new HSSFWorkbook();
-                HSSFSheet outSheet = wb.createSheet(inSheet.getSheetName());
-                copyTitleRow(inTitleRow, outSheet);
-
-                Integer actFileStart = entry.getKey();
-                Integer nextFileStart = mSplittingMap.higherKey(entry.getKey());
-                if (nextFileStart == null) {
-                    nextFileStart = inSheet.getLastRowNum() + 2;
-                }
-
-                copyRowRange(inSheet, outSheet, actFileStart, nextFileStart);
-
-                wb.write(fos);
-            } finally {
-                if (fos != null) {
-                    fos.close();
-                }
+            String name = entry.getValue();
+            ImportConfig partConfig = new ImportConfig(config);
+            int extensionIndex = name.indexOf('.');
+            partConfig.outputDirName = extensionIndex >= 0 ? name.substring(0, extensionIndex) : name;
+            partConfig.outputFileName = mOutputFileNames.get(name);
+            if (parallel) {
+                // the parts are imported in parallel instead of the languages of each part
+                partConfig.threads = 1;
             }
-        }
-    }
-
-    private void copyTitleRow(Row inTitleRow, HSSFSheet outSheet) {
-        HSSFRow outTitleRow = outSheet.createRow(0);
-        copyRow(inTitleRow, outTitleRow);
-    }
 
-    private void copyRowRange(HSSFSheet inSheet, HSSFSheet outSheet, int rowStart, int rowEnd) {
-        for (int rowIdx = rowStart, outRowIdx = 1; rowIdx < rowEnd; rowIdx++, outRowIdx++) {
-            HSSFRow outRow = outSheet.createRow(outRowIdx);
-            HSSFRow inRow = inSheet.getRow(rowIdx-1);
-            copyRow(inRow, outRow);
+            // row numbers of the splitting config start from 1
+            Integer nextFileStart = mSplittingMap.higherKey(entry.getKey());
+            int from = Math.min(entry.getKey() - 1, sheet.rows.size());
+            int to = nextFileStart == null ? sheet.rows.size() : Math.min(nextFileStart - 1, sheet.rows.size());
+            parts.add(new Part(name, partConfig, mapping, sheet, sheet.rows.subList(from, Math.max(from, to))));
         }
-    }
 
-    private void copyRow(Row inTitleRow, HSSFRow outRow) {
-        // TODO copy formatting
-        Iterator<Cell> it = inTitleRow.cellIterator();
-        while (it.hasNext()) {
-            Cell srcCell = it.next();
-            outRow.createCell(srcCell.getColumnIndex(), srcCell.getCellType());
-            outRow.getCell(srcCell.getColumnIndex()).setCellValue(srcCell.getStringCellValue());
+        if (!parallel) {
+            for (Part part : parts) {
+                part.importRows();
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(config.threads);
+        try {
+            List<ForkJoinTask<Void>> tasks = new ArrayList<ForkJoinTask<Void>>();
+            for (Part part : parts) {
+                tasks.add(pool.submit(part));
+            }
+            for (ForkJoinTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while importing", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException)cause;
+                    }
+                    throw new IOException("Cannot import", cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
         }
     }
 }
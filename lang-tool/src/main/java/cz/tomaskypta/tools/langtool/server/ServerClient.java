@@ -0,0 +1,179 @@
+package cz.tomaskypta.tools.langtool.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+/**
+ * Client of the {@link ToolServer}, e.g. for a localization portal or for testing the server. A rejected job is
+ * sent again after the time the server asks for, at most the given number of times. The server does not read the
+ * upload of a rejected job, so a job whose upload is cut off is sent again as well. It is thread safe.
+ */
+public class ServerClient {
+
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final long DEFAULT_RETRY_SECONDS = 1;
+
+    private final String mBaseUrl;
+    private final int mRetries;
+
+    /**
+     * Result of a finished job.
+     */
+    public static class Result {
+
+        private final int mJobId;
+        private final byte[] mContent;
+
+        Result(int jobId, byte[] content) {
+            mJobId = jobId;
+            mContent = content;
+        }
+
+        /**
+         * @return id of the job for {@link #getJobMetrics(int)}
+         */
+        public int getJobId() {
+            return mJobId;
+        }
+
+        public byte[] getContent() {
+            return mContent;
+        }
+    }
+
+    /**
+     * @param baseUrl URL of the server, e.g. {@code http://localhost:8080}
+     * @param retries how many times a rejected job is sent again
+     */
+    public ServerClient(String baseUrl, int retries) {
+        mBaseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        mRetries = retries;
+    }
+
+    /**
+     * Exports a zip archive of the values directories.
+     *
+     * @param format xls, xlsx, csv or tsv
+     * @return the workbook
+     */
+    public Result export(byte[] zip, String format) throws IOException {
+        return post(ToolServer.PATH_EXPORT + "?format=" + format, zip);
+    }
+
+    /**
+     * Imports an xls or xlsx workbook.
+     *
+     * @return zip archive of the imported {@code res} directory
+     */
+    public Result importWorkbook(byte[] workbook) throws IOException {
+        return post(ToolServer.PATH_IMPORT, workbook);
+    }
+
+    /**
+     * Imports a workbook.
+     *
+     * @param format xls, xlsx, csv or tsv
+     * @return zip archive of the imported {@code res} directory
+     */
+    public Result importWorkbook(byte[] workbook, String format) throws IOException {
+        return post(ToolServer.PATH_IMPORT + "?format=" + format, workbook);
+    }
+
+    /**
+     * @return JSON metrics of a finished job
+     */
+    public String getJobMetrics(int jobId) throws IOException {
+        HttpURLConnection connection = open(ToolServer.PATH_JOBS + jobId);
+        return new String(readResponse(connection), Charset.forName("UTF-8"));
+    }
+
+    private Result post(String path, byte[] content) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            HttpURLConnection connection = open(path);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(content.length);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            try {
+                OutputStream body = connection.getOutputStream();
+                try {
+                    body.write(content);
+                } finally {
+                    body.close();
+                }
+            } catch (IOException e) {
+                if (attempt >= mRetries) {
+                    throw e;
+                }
+                connection.disconnect();
+                sleep(DEFAULT_RETRY_SECONDS);
+                continue;
+            }
+
+            if (connection.getResponseCode() == SERVICE_UNAVAILABLE && attempt < mRetries) {
+                readResponse(connection, false);
+                waitForRetry(connection);
+                continue;
+            }
+            byte[] response = readResponse(connection);
+            return new Result(Integer.parseInt(connection.getHeaderField(ToolServer.JOB_ID_HEADER)), response);
+        }
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL(mBaseUrl + path).openConnection();
+    }
+
+    private static void waitForRetry(HttpURLConnection connection) throws IOException {
+        long seconds = DEFAULT_RETRY_SECONDS;
+        try {
+            seconds = Long.parseLong(connection.getHeaderField("Retry-After"));
+        } catch (NumberFormatException e) {
+            // the default is used
+        }
+        sleep(seconds);
+    }
+
+    private static void sleep(long seconds) throws IOException {
+        try {
+            Thread.sleep(seconds * 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the server");
+        }
+    }
+
+    private static byte[] readResponse(HttpURLConnection connection) throws IOException {
+        return readResponse(connection, true);
+    }
+
+    /**
+     * @param failOnError true to throw an exception with the message of the server when the request failed
+     */
+    private static byte[] readResponse(HttpURLConnection connection, boolean failOnError) throws IOException {
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        if (failOnError && status >= 400) {
+            throw new IOException(String.format("Server responded %d: %s", status,
+                new String(content.toByteArray(), Charset.forName("UTF-8")).trim()));
+        }
+        return content.toByteArray();
+    }
+}
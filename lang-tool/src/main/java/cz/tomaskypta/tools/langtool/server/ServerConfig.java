@@ -0,0 +1,64 @@
+package cz.tomaskypta.tools.langtool.server;
+
+import cz.tomaskypta.tools.langtool.CommandlineArguments;
+import cz.tomaskypta.tools.langtool.CommonConfig;
+import cz.tomaskypta.tools.langtool.exporting.ExportConfig;
+import cz.tomaskypta.tools.langtool.importing.ImportConfig;
+
+/**
+ * Config of the translation server. Every job runs with its own copy of the export or import config.
+ */
+public class ServerConfig extends CommonConfig {
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    /** Port to listen on, 0 for any free port. */
+    public int port;
+    /** Number of jobs running at once. */
+    public int jobs;
+    /** Number of jobs waiting for a free worker, further jobs are rejected. */
+    public int queueSize;
+    /** Maximum size of an upload in bytes, larger uploads are rejected with 413. */
+    public long maxUploadSize;
+    /** Maximum uncompressed size of a single file of an uploaded zip archive or workbook in bytes. */
+    public long maxEntrySize;
+    /** Maximum uncompressed size of an uploaded zip archive or workbook in bytes. */
+    public long maxUnzippedSize;
+    public ExportConfig exportConfig;
+    public ImportConfig importConfig;
+
+    public ServerConfig() {
+        super();
+        this.jobs = Runtime.getRuntime().availableProcessors();
+        this.queueSize = 16;
+        this.maxUploadSize = 32 * MEGABYTE;
+        this.maxEntrySize = 16 * MEGABYTE;
+        this.maxUnzippedSize = 128 * MEGABYTE;
+        this.exportConfig = new ExportConfig();
+        this.importConfig = new ImportConfig();
+    }
+
+    public ServerConfig(ServerConfig other) {
+        super(other);
+        this.port = other.port;
+        this.jobs = other.jobs;
+        this.queueSize = other.queueSize;
+        this.maxUploadSize = other.maxUploadSize;
+        this.maxEntrySize = other.maxEntrySize;
+        this.maxUnzippedSize = other.maxUnzippedSize;
+        this.exportConfig = new ExportConfig(other.exportConfig);
+        this.importConfig = new ImportConfig(other.importConfig);
+    }
+
+    public ServerConfig(CommandlineArguments args) {
+        super(args);
+        this.port = args.getServerPort();
+        this.jobs = Math.max(1, args.getJobs());
+        this.queueSize = Math.max(0, args.getQueueSize());
+        this.maxUploadSize = Math.max(1, args.getMaxUploadMb()) * MEGABYTE;
+        this.maxEntrySize = Math.max(1, args.getMaxEntryMb()) * MEGABYTE;
+        this.maxUnzippedSize = Math.max(1, args.getMaxUnzippedMb()) * MEGABYTE;
+        this.exportConfig = new ExportConfig(args);
+        this.importConfig = new ImportConfig(args);
+    }
+}
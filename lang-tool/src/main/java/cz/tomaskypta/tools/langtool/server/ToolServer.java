@@ -0,0 +1,444 @@
+package cz.tomaskypta.tools.langtool.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import cz.tomaskypta.tools.langtool.ResourceTree;
+import cz.tomaskypta.tools.langtool.exporting.ExportConfig;
+import cz.tomaskypta.tools.langtool.exporting.ToolExport;
+import cz.tomaskypta.tools.langtool.importing.ImportConfig;
+import cz.tomaskypta.tools.langtool.importing.ToolImport;
+import cz.tomaskypta.tools.langtool.util.LimitedInputStream;
+import cz.tomaskypta.tools.langtool.util.Metrics;
+import cz.tomaskypta.tools.langtool.util.SizeLimitException;
+
+/**
+ * Local HTTP server running export and import jobs in a single long-lived JVM.
+ * <ul>
+ * <li>{@code POST /export?format=xls|xlsx|csv|tsv} - zip archive of the values directories in, workbook out</li>
+ * <li>{@code POST /import?format=csv|tsv} - workbook in, zip archive of the imported {@code res} directory out,
+ * the format is needed only for csv and tsv, xls and xlsx are recognized by their content</li>
+ * <li>{@code GET /jobs/<id>} - metrics of a finished job, its id is in the {@code X-Job-Id} response header</li>
+ * <li>{@code GET /status} - numbers of running, queued, finished and rejected jobs</li>
+ * </ul>
+ * Jobs run on a bounded pool of workers, each of them reading its request and writing its response. When all the
+ * workers are busy and the queue is full, a job is rejected at once with 503 and {@code Retry-After}, without
+ * reading its upload, and the connection is closed. Uploads larger than allowed, also once unzipped, are rejected
+ * with 413. Only the loopback interface is listened on.
+ */
+public class ToolServer {
+
+    public static final String JOB_ID_HEADER = "X-Job-Id";
+    static final String PATH_EXPORT = "/export";
+    static final String PATH_IMPORT = "/import";
+    static final String PATH_JOBS = "/jobs/";
+    static final String PATH_STATUS = "/status";
+
+    private static final String COMMAND_EXPORT = "export";
+    private static final String COMMAND_IMPORT = "import";
+    private static final String DEFAULT_FORMAT = "xls";
+    /** Import formats which cannot be recognized by the content of the workbook. */
+    private static final Set<String> TEXT_FORMATS = new HashSet<String>(Arrays.asList("csv", "tsv"));
+    private static final Map<String, String> CONTENT_TYPES = new LinkedHashMap<String, String>();
+    private static final String ZIP_CONTENT_TYPE = "application/zip";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=UTF-8";
+    /** Number of finished jobs whose metrics are kept. */
+    private static final int MAX_FINISHED_JOBS = 100;
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    static {
+        CONTENT_TYPES.put("xls", "application/vnd.ms-excel");
+        CONTENT_TYPES.put("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        CONTENT_TYPES.put("csv", "text/csv; charset=UTF-8");
+        CONTENT_TYPES.put("tsv", "text/tab-separated-values; charset=UTF-8");
+    }
+
+    private final PrintStream out;
+    private final ServerConfig mConfig;
+    private final Map<String, String> mMapping;
+    private final HttpServer mServer;
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicInteger mJobIds = new AtomicInteger();
+    private final AtomicInteger mFinished = new AtomicInteger();
+    private final AtomicInteger mRejected = new AtomicInteger();
+    /** Metrics of the recently finished jobs by their ids. */
+    private final Map<Integer, Metrics> mFinishedJobs = new LinkedHashMap<Integer, Metrics>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Metrics> eldest) {
+            return size() > MAX_FINISHED_JOBS;
+        }
+    };
+
+    private ToolServer(PrintStream out, ServerConfig config) throws IOException {
+        this.out = out == null ? System.out : out;
+        mConfig = config;
+        mMapping = ToolImport.loadMapping(config.importConfig.mappingFile);
+        BlockingQueue<Runnable> queue = config.queueSize > 0 ? new ArrayBlockingQueue<Runnable>(config.queueSize)
+            : new SynchronousQueue<Runnable>();
+        mExecutor = new ThreadPoolExecutor(config.jobs, config.jobs, 0, TimeUnit.MILLISECONDS, queue);
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.port), 0);
+        mServer.createContext(PATH_EXPORT, new JobHandler(COMMAND_EXPORT));
+        mServer.createContext(PATH_IMPORT, new JobHandler(COMMAND_IMPORT));
+        mServer.createContext(PATH_JOBS, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                sendJobMetrics(exchange);
+            }
+        });
+        mServer.createContext(PATH_STATUS, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                sendStatus(exchange);
+            }
+        });
+    }
+
+    /**
+     * Starts the server for the command line, it runs until the JVM is stopped. Running and queued jobs are finished
+     * before the JVM exits.
+     */
+    public static void run(ServerConfig config) throws IOException {
+        final ToolServer server = start(null, config);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    server.stop();
+                } catch (InterruptedException e) {
+                    // exiting anyway
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts the server, it runs until {@link #stop()}.
+     *
+     * @param out stream for the log of the jobs, null for the standard output
+     */
+    public static ToolServer start(PrintStream out, ServerConfig config) throws IOException {
+        ToolServer server = new ToolServer(out, config);
+        server.mServer.start();
+        server.out.println(String.format("Listening on http://localhost:%d with %d workers and a queue of %d jobs",
+            server.getPort(), config.jobs, config.queueSize));
+        return server;
+    }
+
+    public int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting jobs, waits for the running and queued ones to finish and send their responses, then stops the
+     * server.
+     */
+    public void stop() throws InterruptedException {
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        mServer.stop(0);
+    }
+
+    private class JobHandler implements HttpHandler {
+
+        private final String mCommand;
+
+        JobHandler(String command) {
+            mCommand = command;
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            // rejected requests are answered on the dispatcher thread, so their uploads are not read
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendAndClose(exchange, 405, "Use POST\n");
+                return;
+            }
+            if (getContentLength(exchange) > mConfig.maxUploadSize) {
+                sendAndClose(exchange, 413, "Upload is larger than " + mConfig.maxUploadSize + " bytes\n");
+                return;
+            }
+            try {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runJob(mCommand, exchange);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                mRejected.incrementAndGet();
+                if (mExecutor.isShutdown()) {
+                    sendAndClose(exchange, 503, "Server is stopping\n");
+                } else {
+                    exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+                    sendAndClose(exchange, 503, "Too many jobs, try again later\n");
+                }
+            }
+        }
+    }
+
+    private void runJob(String command, HttpExchange exchange) {
+        try {
+            runJob(command, exchange, mJobIds.incrementAndGet());
+        } finally {
+            // the client never waits for a job which failed even to send its response
+            exchange.close();
+        }
+    }
+
+    private void runJob(String command, HttpExchange exchange, int id) {
+        Metrics metrics = new Metrics();
+        metrics.setCommand(command);
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        int status = 200;
+        String contentType;
+        try {
+            if (COMMAND_EXPORT.equals(command)) {
+                contentType = export(exchange, metrics, response);
+            } else {
+                contentType = importWorkbook(exchange, metrics, response);
+            }
+        } catch (SizeLimitException e) {
+            status = 413;
+            contentType = TEXT_CONTENT_TYPE;
+            response.reset();
+            writeText(response, e.getMessage() + "\n");
+        } catch (IOException e) {
+            status = 400;
+            contentType = TEXT_CONTENT_TYPE;
+            response.reset();
+            writeText(response, e.getMessage() + "\n");
+        } catch (Throwable e) {
+            // e.g. a malformed workbook failing inside POI, or a workbook too big for the memory
+            status = 500;
+            contentType = TEXT_CONTENT_TYPE;
+            response.reset();
+            writeText(response, e + "\n");
+        }
+        metrics.finish();
+        synchronized (mFinishedJobs) {
+            mFinishedJobs.put(id, metrics);
+        }
+        mFinished.incrementAndGet();
+        out.println(String.format(Locale.ROOT, "Job %d: %s %s - %d, %d bytes", id, command,
+            status == 200 ? "done" : "failed", status, response.size()));
+
+        exchange.getResponseHeaders().set(JOB_ID_HEADER, String.valueOf(id));
+        try {
+            if (status == 413 || !drainUpload(exchange)) {
+                // the rest of a too big upload is not read
+                exchange.getResponseHeaders().set("Connection", "close");
+            }
+            send(exchange, status, contentType, response.toByteArray());
+        } catch (IOException e) {
+            out.println(String.format("Job %d: cannot send the response - %s", id, e.getMessage()));
+        }
+    }
+
+    /**
+     * @return content type of the written workbook
+     */
+    private String export(HttpExchange exchange, Metrics metrics, OutputStream workbook) throws IOException {
+        String format = getQueryParameter(exchange.getRequestURI(), "format", DEFAULT_FORMAT).toLowerCase(Locale.ROOT);
+        if (!CONTENT_TYPES.containsKey(format)) {
+            throw new IOException("Unsupported format " + format + ", use one of " + CONTENT_TYPES.keySet());
+        }
+        ExportConfig config = new ExportConfig(mConfig.exportConfig);
+        config.metrics = metrics;
+        config.outputFile = "strings." + format;
+        ResourceTree resources = ResourceTree.readZip(getRequestBody(exchange), mConfig.maxEntrySize,
+            mConfig.maxUnzippedSize);
+        ToolExport.exportTree(null, config, resources, workbook);
+        return CONTENT_TYPES.get(format);
+    }
+
+    /**
+     * @return content type of the written zip archive
+     */
+    private String importWorkbook(HttpExchange exchange, Metrics metrics, OutputStream zip) throws IOException {
+        String format = getQueryParameter(exchange.getRequestURI(), "format", null);
+        ImportConfig config = new ImportConfig(mConfig.importConfig);
+        config.metrics = metrics;
+        // csv and tsv are read by the extension of the input file, xls and xlsx by the content
+        config.inputFile = null;
+        if (format != null) {
+            format = format.toLowerCase(Locale.ROOT);
+            if (!CONTENT_TYPES.containsKey(format)) {
+                throw new IOException("Unsupported format " + format + ", use one of " + CONTENT_TYPES.keySet());
+            }
+            if (TEXT_FORMATS.contains(format)) {
+                config.inputFile = "workbook." + format;
+            }
+        }
+        byte[] workbook = readFully(getRequestBody(exchange));
+        checkUnzippedSize(workbook);
+        ResourceTree imported = ToolImport.importTree(null, config, mMapping, new ByteArrayInputStream(workbook));
+        imported.writeZip(zip);
+        return ZIP_CONTENT_TYPE;
+    }
+
+    private void sendJobMetrics(HttpExchange exchange) throws IOException {
+        String idString = exchange.getRequestURI().getPath().substring(PATH_JOBS.length());
+        Metrics metrics = null;
+        try {
+            synchronized (mFinishedJobs) {
+                metrics = mFinishedJobs.get(Integer.valueOf(idString));
+            }
+        } catch (NumberFormatException e) {
+            // reported as an unknown job
+        }
+        if (metrics == null) {
+            send(exchange, 404, TEXT_CONTENT_TYPE, "Unknown or running job " + idString + "\n");
+            return;
+        }
+        StringWriter json = new StringWriter();
+        metrics.writeJson(json);
+        send(exchange, 200, JSON_CONTENT_TYPE, json.toString());
+    }
+
+    private void sendStatus(HttpExchange exchange) throws IOException {
+        send(exchange, 200, JSON_CONTENT_TYPE, String.format("{\n  \"running\": %d,\n  \"queued\": %d,\n"
+            + "  \"finished\": %d,\n  \"rejected\": %d\n}\n", mExecutor.getActiveCount(), mExecutor.getQueue().size(),
+            mFinished.get(), mRejected.get()));
+    }
+
+    /**
+     * @return the request body failing with {@link SizeLimitException} once it is larger than allowed
+     */
+    private InputStream getRequestBody(HttpExchange exchange) {
+        return new LimitedInputStream(exchange.getRequestBody(), mConfig.maxUploadSize, "Upload");
+    }
+
+    /**
+     * Reads the rest of the upload, the client may still be sending a failed upload and has to finish it before the
+     * response.
+     *
+     * @return false if the rest of the upload is larger than allowed and was not read to the end
+     */
+    private boolean drainUpload(HttpExchange exchange) throws IOException {
+        try {
+            drain(getRequestBody(exchange));
+            return true;
+        } catch (SizeLimitException e) {
+            return false;
+        }
+    }
+
+    /**
+     * POI unzips a whole xlsx workbook into memory, so its uncompressed size is checked first.
+     */
+    private void checkUnzippedSize(byte[] workbook) throws IOException {
+        if (workbook.length < 2 || workbook[0] != 'P' || workbook[1] != 'K') {
+            return;
+        }
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(workbook));
+        InputStream unzipped = new LimitedInputStream(zip, mConfig.maxUnzippedSize, "Unzipped workbook");
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            drain(new LimitedInputStream(unzipped, mConfig.maxEntrySize, entry.getName()));
+        }
+    }
+
+    /**
+     * @return length of the request body, -1 if it is not known in advance
+     */
+    private static long getContentLength(HttpExchange exchange) {
+        try {
+            return Long.parseLong(exchange.getRequestHeaders().getFirst("Content-Length"));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String getQueryParameter(URI uri, String name, String defaultValue) {
+        String query = uri.getQuery();
+        if (query == null) {
+            return defaultValue;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator != -1 && parameter.substring(0, separator).equals(name)) {
+                return parameter.substring(separator + 1);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String text) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        writeText(content, text);
+        send(exchange, status, contentType, content.toByteArray());
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] content)
+        throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, content.length == 0 ? -1 : content.length);
+            if (content.length > 0) {
+                OutputStream body = exchange.getResponseBody();
+                body.write(content);
+                body.close();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends a text response without reading the request body and closes the connection.
+     */
+    private static void sendAndClose(HttpExchange exchange, int status, String text) throws IOException {
+        exchange.getResponseHeaders().set("Connection", "close");
+        send(exchange, status, TEXT_CONTENT_TYPE, text);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        return content.toByteArray();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) != -1) {
+            // discarded
+        }
+    }
+
+    private static void writeText(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(Charset.forName("UTF-8"));
+        out.write(bytes, 0, bytes.length);
+    }
+}
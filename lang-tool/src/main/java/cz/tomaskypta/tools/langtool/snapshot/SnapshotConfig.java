@@ -0,0 +1,37 @@
+package cz.tomaskypta.tools.langtool.snapshot;
+
+import java.util.List;
+
+import cz.tomaskypta.tools.langtool.CommandlineArguments;
+import cz.tomaskypta.tools.langtool.CommonConfig;
+
+/**
+ * Config of the commands querying snapshots written by exports.
+ */
+public class SnapshotConfig extends CommonConfig {
+
+    public String oldSnapshot;
+    public String newSnapshot;
+    public String reportSnapshot;
+
+    public SnapshotConfig() {
+        super();
+    }
+
+    public SnapshotConfig(SnapshotConfig other) {
+        super(other);
+        this.oldSnapshot = other.oldSnapshot;
+        this.newSnapshot = other.newSnapshot;
+        this.reportSnapshot = other.reportSnapshot;
+    }
+
+    public SnapshotConfig(CommandlineArguments args) {
+        super(args);
+        List<String> diffSnapshots = args.getDiffSnapshots();
+        if (diffSnapshots != null) {
+            this.oldSnapshot = diffSnapshots.get(0);
+            this.newSnapshot = diffSnapshots.get(1);
+        }
+        this.reportSnapshot = args.getReportSnapshot();
+    }
+}
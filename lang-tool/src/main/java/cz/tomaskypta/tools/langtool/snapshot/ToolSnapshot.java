@@ -0,0 +1,198 @@
+package cz.tomaskypta.tools.langtool.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import cz.tomaskypta.tools.langtool.TranslationSnapshot;
+import cz.tomaskypta.tools.langtool.TranslationTable;
+import cz.tomaskypta.tools.langtool.util.Metrics;
+
+/**
+ * Diffs and reports translations of snapshots written by exports. Snapshots are queried directly in the mapped
+ * files, values are compared without decoding them.
+ */
+public class ToolSnapshot {
+
+    private final PrintStream out;
+    private final Metrics mMetrics;
+    /** Title of the diffed sheet, printed before its first change. */
+    private String mSheetTitle;
+
+    private ToolSnapshot(PrintStream out, Metrics metrics) {
+        this.out = out == null ? System.out : out;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Prints the keys whose values were added, removed or changed between the old and the new snapshot, for the
+     * default language and every locale of every sheet.
+     */
+    public static void diff(PrintStream out, SnapshotConfig config) throws IOException {
+        ToolSnapshot tool = new ToolSnapshot(out, config.metrics);
+        TranslationSnapshot oldSnapshot = tool.open(new File(config.oldSnapshot));
+        TranslationSnapshot newSnapshot = tool.open(new File(config.newSnapshot));
+        int changes = 0;
+        for (int i = 0; i < newSnapshot.getSheetCount(); i++) {
+            TranslationSnapshot.Sheet newSheet = newSnapshot.getSheet(i);
+            TranslationSnapshot.Sheet oldSheet = oldSnapshot.getSheet(newSheet.getName());
+            if (oldSheet == null) {
+                tool.out.println("Sheet added: " + newSheet.getName());
+                changes++;
+            } else {
+                changes += tool.diffSheet(oldSheet, newSheet);
+            }
+        }
+        for (int i = 0; i < oldSnapshot.getSheetCount(); i++) {
+            String name = oldSnapshot.getSheet(i).getName();
+            if (newSnapshot.getSheet(name) == null) {
+                tool.out.println("Sheet removed: " + name);
+                changes++;
+            }
+        }
+        if (changes == 0) {
+            tool.out.println("No changes");
+        }
+    }
+
+    /**
+     * Prints numbers of translated and missing keys of every locale of every sheet. Untranslatable keys are not
+     * counted.
+     */
+    public static void report(PrintStream out, SnapshotConfig config) throws IOException {
+        ToolSnapshot tool = new ToolSnapshot(out, config.metrics);
+        TranslationSnapshot snapshot = tool.open(new File(config.reportSnapshot));
+        for (int i = 0; i < snapshot.getSheetCount(); i++) {
+            tool.reportSheet(snapshot.getSheet(i));
+        }
+    }
+
+    private TranslationSnapshot open(File f) throws IOException {
+        long start = System.nanoTime();
+        TranslationSnapshot snapshot = TranslationSnapshot.open(f);
+        mMetrics.addPhase(Metrics.PHASE_SNAPSHOT, System.nanoTime() - start);
+        mMetrics.count(Metrics.BYTES_READ, f.length());
+        return snapshot;
+    }
+
+    /**
+     * @return number of the changes
+     */
+    private int diffSheet(TranslationSnapshot.Sheet oldSheet, TranslationSnapshot.Sheet newSheet) {
+        mSheetTitle = "Sheet: " + newSheet.getName();
+        int changes = diffLocale("default", oldSheet, TranslationSnapshot.DEFAULT, newSheet,
+            TranslationSnapshot.DEFAULT);
+        for (int locale = 0; locale < newSheet.getLocaleCount(); locale++) {
+            String lang = newSheet.getLocale(locale);
+            int oldLocale = oldSheet.getLocaleIndex(lang);
+            if (oldLocale < 0) {
+                printChange(String.format("'%s' added", lang));
+                changes++;
+            } else {
+                changes += diffLocale(lang, oldSheet, oldLocale, newSheet, locale);
+            }
+        }
+        for (int locale = 0; locale < oldSheet.getLocaleCount(); locale++) {
+            String lang = oldSheet.getLocale(locale);
+            if (newSheet.getLocaleIndex(lang) < 0) {
+                printChange(String.format("'%s' removed", lang));
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @return number of the changed keys
+     */
+    private int diffLocale(String lang, TranslationSnapshot.Sheet oldSheet, int oldLocale,
+                           TranslationSnapshot.Sheet newSheet, int newLocale) {
+        List<String> added = new ArrayList<String>();
+        List<String> removed = new ArrayList<String>();
+        List<String> changed = new ArrayList<String>();
+        for (int id = 0; id < newSheet.size(); id++) {
+            if (!newSheet.hasValue(newLocale, id)) {
+                continue;
+            }
+            String key = newSheet.getKey(id);
+            int oldId = oldSheet.getId(key);
+            if (oldId < 0 || !oldSheet.hasValue(oldLocale, oldId)) {
+                added.add(key);
+            } else if (!newSheet.equalValues(newLocale, id, oldSheet, oldLocale, oldId)) {
+                changed.add(key);
+            }
+        }
+        for (int id = 0; id < oldSheet.size(); id++) {
+            if (!oldSheet.hasValue(oldLocale, id)) {
+                continue;
+            }
+            String key = oldSheet.getKey(id);
+            int newId = newSheet.getId(key);
+            if (newId < 0 || !newSheet.hasValue(newLocale, newId)) {
+                removed.add(key);
+            }
+        }
+
+        int changes = added.size() + removed.size() + changed.size();
+        if (changes == 0) {
+            return 0;
+        }
+        printChange(String.format("'%s' added - %d, removed - %d, changed - %d", lang, added.size(),
+            removed.size(), changed.size()));
+        for (String key : added) {
+            out.println("\t+ " + key);
+        }
+        for (String key : removed) {
+            out.println("\t- " + key);
+        }
+        for (String key : changed) {
+            out.println("\t~ " + key);
+        }
+        return changes;
+    }
+
+    private void printChange(String change) {
+        if (mSheetTitle != null) {
+            out.println();
+            out.println(mSheetTitle);
+            mSheetTitle = null;
+        }
+        out.println(change);
+    }
+
+    private void reportSheet(TranslationSnapshot.Sheet sheet) {
+        int keys = 0;
+        int untranslatable = 0;
+        int[] translated = new int[sheet.getLocaleCount()];
+        for (int row = 0; row < sheet.getRowCount(); row++) {
+            if (sheet.getRowKind(row) != TranslationSnapshot.ROW_KEY) {
+                continue;
+            }
+            int id = sheet.getRowId(row);
+            if (sheet.hasFlag(TranslationTable.FLAG_UNTRANSLATABLE, id)) {
+                untranslatable++;
+                continue;
+            }
+            keys++;
+            for (int locale = 0; locale < translated.length; locale++) {
+                if (sheet.hasValue(locale, id)) {
+                    translated[locale]++;
+                }
+            }
+        }
+
+        out.println();
+        out.println(String.format("%s - %d keys, %d untranslatable", sheet.getName(), keys, untranslatable));
+        for (int locale = 0; locale < translated.length; locale++) {
+            String lang = sheet.getLocale(locale);
+            int missing = keys - translated[locale];
+            mMetrics.count(lang, Metrics.MISSING_KEYS, missing);
+            double coverage = keys == 0 ? 100 : 100.0 * translated[locale] / keys;
+            out.println(String.format(Locale.ROOT, "\t'%s' translated - %d, missing - %d, coverage - %.1f %%", lang,
+                translated[locale], missing, coverage));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package cz.tomaskypta.tools.langtool.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads rows of cells of a CSV or TSV file in UTF-8 from a channel, through a buffer.
+ * <p>
+ * Quoted cells are unquoted as defined by RFC 4180, so they may contain separators, doubled quotes and line
+ * breaks. Rows may end with CRLF or LF. An empty cell is read as null and an empty quoted cell as an empty string.
+ * A byte order mark at the start is skipped.
+ */
+public class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final ReadableByteChannel mChannel;
+    private final char mSeparator;
+    private final CharsetDecoder mDecoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer mBytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer mChars = CharBuffer.allocate(BUFFER_SIZE);
+    private boolean mEndOfInput;
+    /** True when the decoder was flushed at the end of the input and has nothing more. */
+    private boolean mFinished;
+    private boolean mStart = true;
+    private final StringBuilder mCell = new StringBuilder();
+    private final List<String> mCells = new ArrayList<String>();
+
+    public CsvReader(ReadableByteChannel channel, char separator) {
+        mChannel = channel;
+        mSeparator = separator;
+        mChars.flip();
+    }
+
+    /**
+     * @return cells of the next row or null at the end of the input
+     */
+    public String[] readRow() throws IOException {
+        int c = next();
+        if (mStart) {
+            mStart = false;
+            if (c == BYTE_ORDER_MARK) {
+                c = next();
+            }
+        }
+        if (c < 0) {
+            return null;
+        }
+        mCells.clear();
+        while (true) {
+            boolean quoted = false;
+            mCell.setLength(0);
+            if (c == '"') {
+                quoted = true;
+                c = readQuoted();
+            }
+            while (c >= 0 && c != mSeparator && c != '\n' && c != '\r') {
+                // characters after the closing quote are kept as they are
+                mCell.append((char)c);
+                c = next();
+            }
+            mCells.add(mCell.length() == 0 && !quoted ? null : mCell.toString());
+            if (c == mSeparator) {
+                c = next();
+                continue;
+            }
+            if (c == '\r') {
+                c = next();
+                if (c != '\n' && c >= 0) {
+                    // a lone CR ends the row too
+                    mChars.position(mChars.position() - 1);
+                }
+            }
+            return mCells.toArray(new String[mCells.size()]);
+        }
+    }
+
+    /**
+     * Reads a quoted cell after its opening quote into the cell buffer.
+     *
+     * @return the character after the closing quote
+     */
+    private int readQuoted() throws IOException {
+        while (true) {
+            int c = next();
+            if (c < 0) {
+                return c;
+            }
+            if (c == '"') {
+                c = next();
+                if (c != '"') {
+                    return c;
+                }
+            }
+            mCell.append((char)c);
+        }
+    }
+
+    private int next() throws IOException {
+        if (!mChars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return mChars.get();
+    }
+
+    /**
+     * @return false if there are no more characters
+     */
+    private boolean fill() throws IOException {
+        if (mFinished) {
+            return false;
+        }
+        mChars.clear();
+        while (mChars.position() == 0) {
+            if (!mEndOfInput && mChannel.read(mBytes) < 0) {
+                mEndOfInput = true;
+            }
+            mBytes.flip();
+            CoderResult result = mDecoder.decode(mBytes, mChars, mEndOfInput);
+            mBytes.compact();
+            if (mEndOfInput && result.isUnderflow()) {
+                mDecoder.flush(mChars);
+                mFinished = true;
+                break;
+            }
+        }
+        mChars.flip();
+        return mChars.hasRemaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+}
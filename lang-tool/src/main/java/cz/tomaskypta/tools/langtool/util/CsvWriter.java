@@ -0,0 +1,154 @@
+package cz.tomaskypta.tools.langtool.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes rows of cells as CSV or TSV in UTF-8 into a channel, through a buffer.
+ * <p>
+ * Cells are quoted as defined by RFC 4180 when they contain the separator, a quote or a line break, so multi-line
+ * values are kept. A null cell is written as an empty field and an empty string as an empty quoted field, so that
+ * {@link CsvReader} can tell them apart. Rows end with CRLF.
+ */
+public class CsvWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel mChannel;
+    private final char mSeparator;
+    private final CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer mChars = CharBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer mBytes = ByteBuffer.allocate(BUFFER_SIZE * 3);
+    private long mBytesWritten;
+
+    public CsvWriter(WritableByteChannel channel, char separator) {
+        mChannel = channel;
+        mSeparator = separator;
+    }
+
+    public void writeRow(String[] cells) throws IOException {
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                append(mSeparator);
+            }
+            writeCell(cells[i]);
+        }
+        append('\r');
+        append('\n');
+    }
+
+    private void writeCell(String cell) throws IOException {
+        if (cell == null) {
+            return;
+        }
+        if (!needsQuotes(cell)) {
+            append(cell);
+            return;
+        }
+        append('"');
+        int start = 0;
+        for (int i = cell.indexOf('"'); i >= 0; i = cell.indexOf('"', start)) {
+            // a quote is escaped by doubling it
+            append(cell.substring(start, i + 1));
+            append('"');
+            start = i + 1;
+        }
+        append(cell.substring(start));
+        append('"');
+    }
+
+    private boolean needsQuotes(String cell) {
+        if (cell.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < cell.length(); i++) {
+            char c = cell.charAt(i);
+            if (c == mSeparator || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void append(char c) throws IOException {
+        if (!mChars.hasRemaining()) {
+            encode(false);
+        }
+        mChars.put(c);
+    }
+
+    private void append(String str) throws IOException {
+        int offset = 0;
+        while (offset < str.length()) {
+            if (!mChars.hasRemaining()) {
+                encode(false);
+            }
+            int length = Math.min(mChars.remaining(), str.length() - offset);
+            mChars.put(str, offset, offset + length);
+            offset += length;
+        }
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        mChars.flip();
+        while (true) {
+            CoderResult result = mEncoder.encode(mChars, mBytes, endOfInput);
+            if (result.isOverflow()) {
+                writeBytes();
+            } else {
+                break;
+            }
+        }
+        // an unfinished surrogate pair stays in the buffer for the next round
+        mChars.compact();
+        if (endOfInput) {
+            while (mEncoder.flush(mBytes).isOverflow()) {
+                writeBytes();
+            }
+        }
+        writeBytes();
+    }
+
+    private void writeBytes() throws IOException {
+        mBytes.flip();
+        while (mBytes.hasRemaining()) {
+            mBytesWritten += mChannel.write(mBytes);
+        }
+        mBytes.clear();
+    }
+
+    /**
+     * Writes the buffered rows out, without closing the channel.
+     */
+    public void flush() throws IOException {
+        encode(false);
+    }
+
+    /**
+     * @return number of bytes written into the channel so far
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * Writes the buffered rows out and closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            encode(true);
+        } finally {
+            mChannel.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package cz.tomaskypta.tools.langtool.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream failing with {@link SizeLimitException} once more than the given number of bytes is read from it.
+ */
+public class LimitedInputStream extends FilterInputStream {
+
+    private final long mLimit;
+    private final String mName;
+    private long mRead;
+
+    /**
+     * @param name name of the input for the message of the exception
+     */
+    public LimitedInputStream(InputStream in, long limit, String name) {
+        super(in);
+        mLimit = limit;
+        mName = name;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long read) throws SizeLimitException {
+        mRead += read;
+        if (mRead > mLimit) {
+            throw new SizeLimitException(mName + " is larger than " + mLimit + " bytes");
+        }
+    }
+}
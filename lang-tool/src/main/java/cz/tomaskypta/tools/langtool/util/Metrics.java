@@ -0,0 +1,208 @@
+package cz.tomaskypta.tools.langtool.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Timings and counters of a single run of the tool, written as a JSON report.
+ * <p>
+ * Phase times are summed over all the threads working in the phase, so with more threads they can be longer than
+ * the total time. Per-locale times and counters are kept separately for each locale.
+ * All the methods are thread safe.
+ */
+public class Metrics {
+
+    public static final String PHASE_DISCOVERY = "discovery";
+    public static final String PHASE_PARSE = "parse";
+    public static final String PHASE_SHEET_BUILD = "sheet build";
+    public static final String PHASE_WORKBOOK_READ = "workbook read";
+    public static final String PHASE_WORKBOOK_WRITE = "workbook write";
+    public static final String PHASE_XML_WRITE = "xml write";
+    public static final String PHASE_SNAPSHOT = "snapshot";
+
+    public static final String KEYS = "keys";
+    public static final String MISSING_KEYS = "missing keys";
+    public static final String PLURALS = "plurals";
+    public static final String ARRAYS = "arrays";
+    public static final String MIXED_CONTENT_PARSES = "mixed content parses";
+    public static final String BYTES_READ = "bytes read";
+    public static final String BYTES_WRITTEN = "bytes written";
+    public static final String POOLED_STRINGS = "pooled strings";
+    public static final String POOL_LOOKUPS = "pool lookups";
+    public static final String DUPLICATE_STRINGS = "duplicate strings";
+    public static final String DUPLICATE_STRING_BYTES = "duplicate string bytes";
+
+    private final long mStart = System.nanoTime();
+    /** End of the run, 0 while it is running. */
+    private long mEnd;
+    private String mCommand;
+    private final Map<String, Long> mPhases = new LinkedHashMap<String, Long>();
+    private final Map<String, Long> mCounters = new LinkedHashMap<String, Long>();
+    private final Map<String, LocaleMetrics> mLocales = new TreeMap<String, LocaleMetrics>();
+
+    private static class LocaleMetrics {
+        long nanos;
+        final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+    }
+
+    public synchronized void setCommand(String command) {
+        mCommand = command;
+    }
+
+    /**
+     * Adds time to the phase.
+     *
+     * @param nanos duration of a part of the phase, measured by {@link System#nanoTime()}
+     */
+    public synchronized void addPhase(String phase, long nanos) {
+        add(mPhases, phase, nanos);
+    }
+
+    /**
+     * Adds time to the time spent with the locale.
+     *
+     * @param nanos duration of a work on the locale, measured by {@link System#nanoTime()}
+     */
+    public synchronized void addLocaleTime(String locale, long nanos) {
+        getLocale(locale).nanos += nanos;
+    }
+
+    /**
+     * Adds the value to a counter of the whole run.
+     */
+    public synchronized void count(String counter, long value) {
+        add(mCounters, counter, value);
+    }
+
+    /**
+     * Adds the value to a counter of the locale.
+     */
+    public synchronized void count(String locale, String counter, long value) {
+        add(getLocale(locale).counters, counter, value);
+    }
+
+    /**
+     * Ends the run, the total time no longer grows.
+     */
+    public synchronized void finish() {
+        mEnd = System.nanoTime();
+    }
+
+    public synchronized void writeJson(File f) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), "UTF-8"));
+        try {
+            writeJson(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public synchronized void writeJson(Writer out) throws IOException {
+        out.write("{\n");
+        out.write("  \"command\": " + quote(mCommand) + ",\n");
+        out.write("  \"totalMillis\": " + millis((mEnd != 0 ? mEnd : System.nanoTime()) - mStart) + ",\n");
+        out.write("  \"phaseMillis\": {");
+        writeMillis(out, mPhases, "    ");
+        out.write("},\n");
+        out.write("  \"counters\": {");
+        writeCounters(out, mCounters, "    ");
+        out.write("},\n");
+        out.write("  \"locales\": {");
+        String separator = "\n";
+        for (Map.Entry<String, LocaleMetrics> entry : mLocales.entrySet()) {
+            out.write(separator);
+            out.write("    " + quote(entry.getKey()) + ": {\n");
+            out.write("      \"millis\": " + millis(entry.getValue().nanos) + ",\n");
+            out.write("      \"counters\": {");
+            writeCounters(out, entry.getValue().counters, "        ");
+            out.write("}\n    }");
+            separator = ",\n";
+        }
+        out.write(mLocales.isEmpty() ? "}\n" : "\n  }\n");
+        out.write("}\n");
+    }
+
+    private LocaleMetrics getLocale(String locale) {
+        LocaleMetrics l = mLocales.get(locale);
+        if (l == null) {
+            l = new LocaleMetrics();
+            mLocales.put(locale, l);
+        }
+        return l;
+    }
+
+    private static void add(Map<String, Long> values, String name, long value) {
+        Long previous = values.get(name);
+        values.put(name, previous == null ? value : previous + value);
+    }
+
+    private static void writeMillis(Writer out, Map<String, Long> values, String indent) throws IOException {
+        String separator = "\n";
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            out.write(separator + indent + quote(entry.getKey()) + ": " + millis(entry.getValue()));
+            separator = ",\n";
+        }
+        if (!values.isEmpty()) {
+            out.write("\n" + indent.substring(2));
+        }
+    }
+
+    private static void writeCounters(Writer out, Map<String, Long> values, String indent) throws IOException {
+        String separator = "\n";
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            out.write(separator + indent + quote(entry.getKey()) + ": " + entry.getValue());
+            separator = ",\n";
+        }
+        if (!values.isEmpty()) {
+            out.write("\n" + indent.substring(2));
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+    }
+
+    private static String quote(String str) {
+        if (str == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(str.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int)c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,18 @@
+package cz.tomaskypta.tools.langtool.util;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * Input stream which is not closed by its readers, e.g. by parsers closing the stream they have read.
+ */
+public class NonClosingInputStream extends FilterInputStream {
+
+    public NonClosingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public void close() {
+    }
+}
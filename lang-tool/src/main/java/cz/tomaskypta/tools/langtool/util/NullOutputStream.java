@@ -0,0 +1,17 @@
+package cz.tomaskypta.tools.langtool.util;
+
+import java.io.OutputStream;
+
+/**
+ * Output stream discarding everything written into it, e.g. for the progress output of embedded runs.
+ */
+public class NullOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+}
@@ -0,0 +1,15 @@
+package cz.tomaskypta.tools.langtool.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an input is larger than allowed, e.g. an upload to the server.
+ */
+public class SizeLimitException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SizeLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,149 @@
+package cz.tomaskypta.tools.langtool.util;
+
+/**
+ * Deduplicating store of strings, so that equal values of many locales, cells and rows are held only once.
+ * <p>
+ * Unlike {@link String#intern()}, the pool lives only as long as a single export or import and it counts how many
+ * duplicates it saved. It is split into segments with their own locks, so that it can be shared by parallel parsers.
+ */
+public class StringPool {
+
+    private static final int SEGMENTS = 16;
+    private static final int INITIAL_CAPACITY = 256;
+    /** Estimated size of a string with its char array, without the chars themselves. */
+    private static final int STRING_OVERHEAD = 40;
+
+    private final Segment[] mSegments = new Segment[SEGMENTS];
+
+    private static class Segment {
+        String[] table = new String[INITIAL_CAPACITY];
+        int size;
+        long lookups;
+        long duplicates;
+        long duplicateBytes;
+
+        String intern(String str, int hash) {
+            lookups++;
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            String existing;
+            while ((existing = table[slot]) != null) {
+                if (existing.equals(str)) {
+                    if (existing != str) {
+                        duplicates++;
+                        duplicateBytes += STRING_OVERHEAD + 2L * str.length();
+                    }
+                    return existing;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = str;
+            if (++size * 2 > table.length) {
+                rehash();
+            }
+            return str;
+        }
+
+        private void rehash() {
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for (String str : old) {
+                if (str != null) {
+                    int slot = (hash(str) >>> 4) & mask;
+                    while (table[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = str;
+                }
+            }
+        }
+    }
+
+    public StringPool() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            mSegments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return the pooled string equal to the given one, which is added to the pool if it has no such string yet
+     */
+    public String intern(String str) {
+        if (str == null) {
+            return null;
+        }
+        int hash = hash(str);
+        Segment segment = mSegments[hash & (SEGMENTS - 1)];
+        synchronized (segment) {
+            return segment.intern(str, hash >>> 4);
+        }
+    }
+
+    /**
+     * @return number of distinct strings in the pool
+     */
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of strings passed to the pool
+     */
+    public long getLookups() {
+        long lookups = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                lookups += segment.lookups;
+            }
+        }
+        return lookups;
+    }
+
+    /**
+     * @return number of strings replaced by an equal string of the pool
+     */
+    public long getDuplicates() {
+        long duplicates = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                duplicates += segment.duplicates;
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * @return estimated heap size of the replaced strings, with two bytes per char
+     */
+    public long getDuplicateBytes() {
+        long bytes = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                bytes += segment.duplicateBytes;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Adds the statistics of the pool to the counters of the run.
+     */
+    public void count(Metrics metrics) {
+        metrics.count(Metrics.POOLED_STRINGS, getSize());
+        metrics.count(Metrics.POOL_LOOKUPS, getLookups());
+        metrics.count(Metrics.DUPLICATE_STRINGS, getDuplicates());
+        metrics.count(Metrics.DUPLICATE_STRING_BYTES, getDuplicateBytes());
+    }
+
+    private static int hash(String str) {
+        int h = str.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
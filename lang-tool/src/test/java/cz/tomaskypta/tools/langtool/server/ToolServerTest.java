@@ -0,0 +1,207 @@
+package cz.tomaskypta.tools.langtool.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.beust.jcommander.JCommander;
+import cz.tomaskypta.tools.langtool.CommandlineArguments;
+import cz.tomaskypta.tools.langtool.ResourceTree;
+import cz.tomaskypta.tools.langtool.util.NullOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the server with a single worker and a single queued job, so the third job at once is rejected.
+ */
+public class ToolServerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /** Bytes of an upload held back to keep its job running or queued. */
+    private static final int HELD_BACK = 16;
+
+    private ToolServer mServer;
+    private String mUrl;
+    private byte[] mZip;
+
+    @Before
+    public void setUp() throws IOException {
+        CommandlineArguments args = new CommandlineArguments();
+        new JCommander(args, "--server", "0", "--jobs", "1", "--queue", "1");
+        mServer = ToolServer.start(new PrintStream(new NullOutputStream()), new ServerConfig(args));
+        mUrl = "http://localhost:" + mServer.getPort();
+
+        ResourceTree tree = new ResourceTree();
+        tree.put("values", "strings.xml", ("<resources>\n  <string name=\"hello\">Hello</string>\n"
+            + "  <string name=\"bye\">Bye</string>\n</resources>\n").getBytes(UTF_8));
+        tree.put("values-cs", "strings.xml", ("<resources>\n  <string name=\"hello\">Ahoj</string>\n"
+            + "  <string name=\"bye\">Nashle</string>\n</resources>\n").getBytes(UTF_8));
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        tree.writeZip(zip);
+        mZip = zip.toByteArray();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mServer.stop();
+    }
+
+    @Test
+    public void exportAndImportRoundTrip() throws IOException {
+        ServerClient client = new ServerClient(mUrl, 0);
+        for (String format : new String[] {"xls", "xlsx", "csv", "tsv"}) {
+            ServerClient.Result workbook = client.export(mZip, format);
+            assertTrue(workbook.getContent().length > 0);
+            assertTrue(client.getJobMetrics(workbook.getJobId()).contains("\"command\": \"export\""));
+
+            ResourceTree imported = ResourceTree.readZip(new ByteArrayInputStream(
+                client.importWorkbook(workbook.getContent(), format).getContent()));
+            String def = new String(imported.get("values", "strings.xml"), UTF_8);
+            String cs = new String(imported.get("values-cs", "strings.xml"), UTF_8);
+            assertTrue(format, def.contains("<string name=\"hello\">Hello</string>"));
+            assertTrue(format, def.contains("<string name=\"bye\">Bye</string>"));
+            assertTrue(format, cs.contains("<string name=\"hello\">Ahoj</string>"));
+            assertTrue(format, cs.contains("<string name=\"bye\">Nashle</string>"));
+        }
+    }
+
+    @Test
+    public void rejectsJobsOverQueueAndRetries() throws Exception {
+        Socket running = startUpload();
+        Socket queued = startUpload();
+        awaitStatus("running", 1);
+        awaitStatus("queued", 1);
+
+        try {
+            new ServerClient(mUrl, 0).export(mZip, "xls");
+            fail("The job should be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Server responded 503"));
+        }
+
+        final ServerClient client = new ServerClient(mUrl, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return client.export(mZip, "csv").getContent();
+                }
+            }));
+        }
+        // every first attempt is rejected while the held back uploads keep the worker and the queue busy
+        awaitStatus("rejected", 5);
+
+        assertEquals("HTTP/1.1 200 OK", finishUpload(running));
+        assertEquals("HTTP/1.1 200 OK", finishUpload(queued));
+        byte[] expected = new ServerClient(mUrl, 10).export(mZip, "csv").getContent();
+        for (Future<byte[]> result : results) {
+            assertEquals(new String(expected, UTF_8), new String(result.get(30, TimeUnit.SECONDS), UTF_8));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void stopSendsResponsesOfRunningJobs() throws Exception {
+        Socket running = startUpload();
+        awaitStatus("running", 1);
+        Thread stopping = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    mServer.stop();
+                } catch (InterruptedException e) {
+                    // the test fails on the response
+                }
+            }
+        };
+        stopping.start();
+        Thread.sleep(200);
+        assertEquals("HTTP/1.1 200 OK", finishUpload(running));
+        stopping.join();
+    }
+
+    /**
+     * Sends an export job without the end of its upload, so it keeps running or waiting in the queue.
+     */
+    private Socket startUpload() throws IOException {
+        Socket socket = new Socket("localhost", mServer.getPort());
+        OutputStream out = socket.getOutputStream();
+        out.write(("POST " + ToolServer.PATH_EXPORT + "?format=csv HTTP/1.1\r\nHost: localhost\r\n"
+            + "Content-Length: " + mZip.length + "\r\n\r\n").getBytes(UTF_8));
+        out.write(mZip, 0, mZip.length - HELD_BACK);
+        out.flush();
+        return socket;
+    }
+
+    /**
+     * @return status line of the response
+     */
+    private String finishUpload(Socket socket) throws IOException {
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(mZip, mZip.length - HELD_BACK, HELD_BACK);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1 && c != '\r') {
+                line.append((char) c);
+            }
+            return line.toString();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Waits until the number of jobs in the status of the server is at least the expected one.
+     */
+    private void awaitStatus(String name, int expected) throws Exception {
+        Pattern pattern = Pattern.compile("\"" + name + "\": (\\d+)");
+        String status = null;
+        for (int i = 0; i < 100; i++) {
+            HttpURLConnection connection = (HttpURLConnection) new URL(mUrl + ToolServer.PATH_STATUS).openConnection();
+            InputStream in = connection.getInputStream();
+            try {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+                status = new String(content.toByteArray(), UTF_8);
+            } finally {
+                in.close();
+            }
+            Matcher matcher = pattern.matcher(status);
+            if (matcher.find() && Integer.parseInt(matcher.group(1)) >= expected) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail("Expected at least " + expected + " " + name + " jobs in " + status);
+    }
+}
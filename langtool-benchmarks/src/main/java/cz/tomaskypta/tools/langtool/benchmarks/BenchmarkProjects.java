@@ -0,0 +1,44 @@
+package cz.tomaskypta.tools.langtool.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Inputs of the benchmarks, resource trees and workbooks of a given size written into temporary directories.
+ */
+final class BenchmarkProjects {
+
+    private BenchmarkProjects() {
+    }
+
+    static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Generates a synthetic project with the default mix of features and the default seed, so that all the
+     * benchmarks run on the same inputs.
+     *
+     * @return the project directory
+     */
+    static File createProject(File dir, int keys, int locales) throws IOException {
+        SyntheticProject generator = new SyntheticProject();
+        generator.keys = keys;
+        generator.locales = locales;
+        return generator.generate(dir);
+    }
+
+    static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,56 @@
+package cz.tomaskypta.tools.langtool.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import cz.tomaskypta.tools.langtool.util.EscapingUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Escaping of imported values, with and without quotes to escape.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EscapingBenchmark {
+
+    private final String[] mValues = {
+        "Plain text without anything to escape",
+        "Don't forget the apostrophe",
+        "Text with \"quotes\" and 'apostrophes'",
+        "\\\"Already quoted text\\\"",
+        "%1$d items",
+    };
+
+    @Benchmark
+    public void escapeWithBackslash(Blackhole bh) {
+        for (String value : mValues) {
+            bh.consume(EscapingUtils.escapeWithBackslash(value));
+        }
+    }
+
+    @Benchmark
+    public void escapeWithQuotes(Blackhole bh) {
+        for (String value : mValues) {
+            bh.consume(EscapingUtils.escapeWithQuotes(value));
+        }
+    }
+
+    @Benchmark
+    public void unescapeQuotes(Blackhole bh) {
+        for (String value : mValues) {
+            bh.consume(EscapingUtils.unescapeQuotes(value));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package cz.tomaskypta.tools.langtool.benchmarks;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import cz.tomaskypta.tools.langtool.exporting.ExportConfig;
+import cz.tomaskypta.tools.langtool.exporting.ToolExport;
+import cz.tomaskypta.tools.langtool.util.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Export of a project into a workbook. The cost of a single locale is the difference between the results for
+ * different numbers of locales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({"1000", "10000"})
+    int keys;
+
+    @Param({"1", "10"})
+    int locales;
+
+    private File mDir;
+    private File mProject;
+
+    @Setup
+    public void setUp() throws Exception {
+        mDir = BenchmarkProjects.createTempDir("export-benchmark");
+        mProject = BenchmarkProjects.createProject(new File(mDir, "project"), keys, locales);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkProjects.delete(mDir);
+    }
+
+    @Benchmark
+    public File exportXls() throws Exception {
+        return export("strings.xls");
+    }
+
+    @Benchmark
+    public File exportXlsx() throws Exception {
+        return export("strings.xlsx");
+    }
+
+    private File export(String fileName) throws Exception {
+        ExportConfig config = new ExportConfig();
+        config.inputExportProject = mProject.getPath();
+        config.outputFile = new File(mDir, fileName).getPath();
+        ToolExport.run(new PrintStream(new NullOutputStream()), config);
+        return new File(config.outputFile);
+    }
+}
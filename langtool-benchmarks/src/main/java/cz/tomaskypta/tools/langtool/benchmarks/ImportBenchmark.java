@@ -0,0 +1,64 @@
+package cz.tomaskypta.tools.langtool.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import cz.tomaskypta.tools.langtool.importing.ImportConfig;
+import cz.tomaskypta.tools.langtool.importing.ToolImport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Import of a workbook, reading of its rows and generating of the resource files of all its languages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportBenchmark {
+
+    @Param({"1000", "10000"})
+    int keys;
+
+    @Param({"1", "10"})
+    int locales;
+
+    @Param({"1", "4"})
+    int threads;
+
+    private File mDir;
+    private File mWorkbook;
+
+    @Setup
+    public void setUp() throws Exception {
+        mDir = BenchmarkProjects.createTempDir("import-benchmark");
+        File project = BenchmarkProjects.createProject(new File(mDir, "project"), keys, locales);
+        mWorkbook = SyntheticProject.exportWorkbook(project, new File(mDir, "strings.xls"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkProjects.delete(mDir);
+    }
+
+    @Benchmark
+    public void importXls() throws Exception {
+        ImportConfig config = new ImportConfig();
+        config.inputFile = mWorkbook.getPath();
+        config.outputDir = mDir.getPath();
+        config.threads = threads;
+        ToolImport.run(config);
+    }
+}
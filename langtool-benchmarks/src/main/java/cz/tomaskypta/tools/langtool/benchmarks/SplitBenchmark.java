@@ -0,0 +1,105 @@
+package cz.tomaskypta.tools.langtool.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import cz.tomaskypta.tools.langtool.importing.splitting.SplittingConfig;
+import cz.tomaskypta.tools.langtool.importing.splitting.ToolImportSplitter;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Import of a workbook split into parts of the same size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SplitBenchmark {
+
+    @Param({"1000", "10000"})
+    int keys;
+
+    @Param({"1", "10"})
+    int locales;
+
+    @Param({"4"})
+    int parts;
+
+    @Param({"1", "4"})
+    int threads;
+
+    private File mDir;
+    private File mWorkbook;
+    private File mSplittingConfig;
+
+    @Setup
+    public void setUp() throws Exception {
+        mDir = BenchmarkProjects.createTempDir("split-benchmark");
+        File project = BenchmarkProjects.createProject(new File(mDir, "project"), keys, locales);
+        mWorkbook = SyntheticProject.exportWorkbook(project, new File(mDir, "strings.xls"));
+        mSplittingConfig = writeSplittingConfig(new File(mDir, "splitting.xls"), countRows(mWorkbook));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkProjects.delete(mDir);
+    }
+
+    @Benchmark
+    public void split() throws Exception {
+        SplittingConfig config = new SplittingConfig();
+        config.inputFile = mWorkbook.getPath();
+        config.splittingConfigFile = mSplittingConfig.getPath();
+        config.outputDir = mDir.getPath();
+        config.threads = threads;
+        ToolImportSplitter.run(config);
+    }
+
+    private static int countRows(File workbook) throws IOException {
+        InputStream in = new FileInputStream(workbook);
+        try {
+            return new HSSFWorkbook(in).getSheetAt(0).getLastRowNum();
+        } finally {
+            in.close();
+        }
+    }
+
+    private File writeSplittingConfig(File f, int rows) throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet();
+        // the first row of the workbook is the title, rows are numbered from 1
+        for (int i = 0; i < parts; i++) {
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellValue(2 + i * rows / parts);
+            row.createCell(1).setCellValue("part" + i + ".xls");
+        }
+        OutputStream out = new FileOutputStream(f);
+        try {
+            wb.write(out);
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+}
@@ -0,0 +1,247 @@
+package cz.tomaskypta.tools.langtool.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Random;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import cz.tomaskypta.tools.langtool.exporting.ExportConfig;
+import cz.tomaskypta.tools.langtool.exporting.ToolExport;
+import cz.tomaskypta.tools.langtool.util.NullOutputStream;
+
+/**
+ * Generator of synthetic Android projects and their workbooks for benchmarks and load testing.
+ * <p>
+ * The project has {@code res/values*}/strings.xml files with the chosen number of keys and locales and a mix of
+ * comments, section comments, plurals, string arrays, mixed content, string references, untranslatable strings
+ * and missing translations. Everything is derived from the seed, the same configuration always generates the same
+ * files.
+ */
+public class SyntheticProject {
+
+    private static final String[] LANGUAGES = {"cs", "de", "fr", "es", "it", "pl", "pt", "ru", "sk", "uk", "hu",
+        "nl", "sv", "da", "fi", "nb", "el", "tr", "ro", "bg", "hr", "sl", "sr", "lt", "lv", "et", "ja", "ko", "zh",
+        "ar"};
+    private static final String[] REGIONS = {"", "rUS", "rGB", "rDE", "rFR", "rES", "rBR", "rCN", "rTW", "rIN"};
+    private static final String[] WORDS = {"account", "settings", "message", "download", "share", "profile",
+        "network", "error", "please", "try", "again", "later", "your", "file", "was", "saved", "open", "close",
+        "delete", "item", "items", "new", "update", "available", "connection", "lost", "sign", "in", "out", "done"};
+    /** Characters mixed into the translated words, so that the translations are not plain ASCII. */
+    private static final String ACCENTS = "áčďéěíňóřšťúůýžäöüßøåłżśćęąñçàèìòù";
+    private static final String[] QUANTITIES = {"one", "few", "many", "other"};
+
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_PLURALS = 1;
+    private static final int TYPE_ARRAY = 2;
+    private static final int TYPE_MIXED = 3;
+    private static final int TYPE_REFERENCE = 4;
+    private static final int TYPE_UNTRANSLATABLE = 5;
+
+    @Parameter(names = "-o", description = "Output project dir", required = true)
+    public String outputDir;
+    @Parameter(names = "--workbook", description = "Also export the project into this workbook (.xls or .xlsx)")
+    public String workbook;
+    @Parameter(names = "--keys", description = "Number of keys")
+    public int keys = 1000;
+    @Parameter(names = "--locales", description = "Number of translated locales")
+    public int locales = 10;
+    @Parameter(names = "--seed", description = "Seed of the generated content")
+    public long seed = 42;
+    @Parameter(names = "--section-every", description = "Number of keys in a section, 0 for no sections")
+    public int sectionEvery = 100;
+    @Parameter(names = "--comments", description = "Ratio of keys with a comment")
+    public double commentsRatio = 0.1;
+    @Parameter(names = "--plurals", description = "Ratio of plurals")
+    public double pluralsRatio = 0.05;
+    @Parameter(names = "--arrays", description = "Ratio of string arrays")
+    public double arraysRatio = 0.03;
+    @Parameter(names = "--mixed", description = "Ratio of strings with mixed content")
+    public double mixedRatio = 0.05;
+    @Parameter(names = "--references", description = "Ratio of string references")
+    public double referencesRatio = 0.02;
+    @Parameter(names = "--untranslatable", description = "Ratio of untranslatable strings")
+    public double untranslatableRatio = 0.02;
+    @Parameter(names = "--missing", description = "Ratio of missing translations")
+    public double missingRatio = 0.02;
+
+    public static void main(String[] args) throws Exception {
+        SyntheticProject generator = new SyntheticProject();
+        try {
+            new JCommander(generator, args);
+        } catch (ParameterException e) {
+            System.err.println(e.getMessage());
+            new JCommander(generator).usage();
+            return;
+        }
+        File project = generator.generate(new File(generator.outputDir));
+        System.out.println("Generated project " + project);
+        if (generator.workbook != null) {
+            exportWorkbook(project, new File(generator.workbook));
+            System.out.println("Exported workbook " + generator.workbook);
+        }
+    }
+
+    /**
+     * @return name of the values directory qualifier of the locale with the given index
+     */
+    public static String getLocale(int index) {
+        String language = LANGUAGES[index % LANGUAGES.length];
+        String region = REGIONS[(index / LANGUAGES.length) % REGIONS.length];
+        int round = index / (LANGUAGES.length * REGIONS.length);
+        if (round > 0) {
+            // more locales than combinations, only for really huge projects
+            language += round;
+        }
+        return region.isEmpty() ? language : language + "-" + region;
+    }
+
+    /**
+     * Generates the project into the directory.
+     *
+     * @return the project directory
+     */
+    public File generate(File dir) throws IOException {
+        int[] types = generateTypes();
+        File res = new File(dir, "res");
+        writeStrings(new File(res, "values"), types, null, new Random(seed));
+        for (int i = 0; i < locales; i++) {
+            String locale = getLocale(i);
+            writeStrings(new File(res, "values-" + locale), types, locale, new Random(seed * 31 + i + 1));
+        }
+        return dir;
+    }
+
+    /**
+     * Exports the project into a workbook, which has the same rows and columns as the workbooks of the translators.
+     */
+    public static File exportWorkbook(File project, File workbook) throws Exception {
+        ExportConfig config = new ExportConfig();
+        config.inputExportProject = project.getPath();
+        config.outputFile = workbook.getPath();
+        ToolExport.run(new PrintStream(new NullOutputStream()), config);
+        return workbook;
+    }
+
+    /**
+     * Decides the type of every key, the same for the default language and all the locales.
+     */
+    private int[] generateTypes() {
+        Random random = new Random(seed);
+        int[] types = new int[keys];
+        for (int i = 0; i < keys; i++) {
+            double r = random.nextDouble();
+            if ((r -= pluralsRatio) < 0) {
+                types[i] = TYPE_PLURALS;
+            } else if ((r -= arraysRatio) < 0) {
+                types[i] = TYPE_ARRAY;
+            } else if ((r -= mixedRatio) < 0) {
+                types[i] = TYPE_MIXED;
+            } else if ((r -= referencesRatio) < 0 && i > 0) {
+                types[i] = TYPE_REFERENCE;
+            } else if ((r -= untranslatableRatio) < 0) {
+                types[i] = TYPE_UNTRANSLATABLE;
+            } else {
+                types[i] = TYPE_STRING;
+            }
+        }
+        return types;
+    }
+
+    /**
+     * @param locale locale of the translation or null for the default language
+     */
+    private void writeStrings(File valuesDir, int[] types, String locale, Random random) throws IOException {
+        valuesDir.mkdirs();
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(new File(valuesDir, "strings.xml")), "UTF-8"));
+        // the structure is the same in all the files, only the text differs
+        Random structure = new Random(seed);
+        try {
+            out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n");
+            for (int i = 0; i < keys; i++) {
+                boolean comment = structure.nextDouble() < commentsRatio;
+                int itemCount = 2 + structure.nextInt(4);
+                if (sectionEvery > 0 && i % sectionEvery == 0) {
+                    out.write("\n    <!-- $ Section " + (i / sectionEvery + 1) + " -->\n");
+                }
+                if (comment) {
+                    out.write("    <!-- Used on the " + WORDS[i % WORDS.length] + " screen -->\n");
+                }
+                boolean missing = locale != null && random.nextDouble() < missingRatio;
+                if (missing || (locale != null && types[i] == TYPE_REFERENCE)) {
+                    continue;
+                }
+                String key = "key_" + i;
+                switch (types[i]) {
+                    case TYPE_PLURALS:
+                        out.write("    <plurals name=\"" + key + "\">\n");
+                        for (String quantity : QUANTITIES) {
+                            out.write("        <item quantity=\"" + quantity + "\">%d " + text(random, locale, 2)
+                                + "</item>\n");
+                        }
+                        out.write("    </plurals>\n");
+                        break;
+                    case TYPE_ARRAY:
+                        out.write("    <string-array name=\"" + key + "\">\n");
+                        for (int j = 0; j < itemCount; j++) {
+                            out.write("        <item>" + text(random, locale, 1) + "</item>\n");
+                        }
+                        out.write("    </string-array>\n");
+                        break;
+                    case TYPE_MIXED:
+                        out.write("    <string name=\"" + key + "\">" + text(random, locale, 2) + " <b>"
+                            + text(random, locale, 1) + "</b> " + text(random, locale, 3) + "</string>\n");
+                        break;
+                    case TYPE_REFERENCE:
+                        out.write("    <string name=\"" + key + "\">@string/key_" + (i - 1) + "</string>\n");
+                        break;
+                    case TYPE_UNTRANSLATABLE:
+                        if (locale == null) {
+                            out.write("    <string name=\"" + key + "\" translatable=\"false\">"
+                                + text(random, null, 1) + "</string>\n");
+                        }
+                        break;
+                    default:
+                        out.write("    <string name=\"" + key + "\">" + text(random, locale, 2 + random.nextInt(8))
+                            + "</string>\n");
+                        break;
+                }
+            }
+            out.write("</resources>\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String text(Random random, String locale, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (locale == null) {
+                sb.append(word);
+            } else {
+                // translated word, with an accented character in place of its first letter
+                sb.append(ACCENTS.charAt(random.nextInt(ACCENTS.length()))).append(word, 1, word.length());
+            }
+        }
+        int r = random.nextInt(20);
+        if (r == 0) {
+            sb.append(" \\'").append(locale == null ? "quoted" : locale).append("\\'");
+        } else if (r == 1) {
+            sb.append(" \\\"").append(locale == null ? "quoted" : locale).append("\\\"");
+        } else if (r == 2) {
+            sb.append(" %1$s");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package cz.tomaskypta.tools.langtool.importing;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Transformations of imported values, of matching and not matching values and of languages the transformation
+ * is not allowed for.
+ * <p>
+ * It is in the package of {@link ImportConfig.Transformation}, which is not public.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransformationBenchmark {
+
+    private final ImportConfig.Transformation mTransformation =
+        new ImportConfig.Transformation("%(\\d)\\$s", "%$1\\$d", "cs,de,fr");
+
+    @Benchmark
+    public void matching(Blackhole bh) {
+        bh.consume(mTransformation.apply("%1$s items", "cs"));
+    }
+
+    @Benchmark
+    public void notMatching(Blackhole bh) {
+        bh.consume(mTransformation.apply("Plain text of a longer value without any placeholders", "cs"));
+    }
+
+    @Benchmark
+    public void otherLanguage(Blackhole bh) {
+        bh.consume(mTransformation.apply("%1$s items", "en"));
+    }
+}